@@ -6,13 +6,18 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 import android.widget.TextView;
+import de.pecheur.card.AbsStack.IdLookup;
+import de.pecheur.card.CardView.ViewInflater;
 
-public class HelloWorldAdapter extends BaseAdapter {
+public class HelloWorldAdapter extends CardAdapter implements ViewInflater, IdLookup {
 	private Context context;
 	private static final int ITEM_TYPE_COUNT = 4;
 	
+	// the worker thread has its own inflater, so it doesn't
+	// block inflations on the ui thread.
+	private LayoutInflater mWorkerInflater;
+	
 	// it is important to use ids, if you are going to 
 	// delete or add views, or the cardview is not 
 	// going to find the selected card again after a change.
@@ -20,9 +25,14 @@ public class HelloWorldAdapter extends BaseAdapter {
 
 	private ArrayList<String> mItems;
 	
+	// finds the position of an id without searching
+	// the whole list.
+	private IdIndex mIndex;
+	
 	
 	public HelloWorldAdapter(Context context) {
 		this.context = context;
+		mWorkerInflater = LayoutInflater.from(context).cloneInContext(context);
 		
 		// load hello world string array from resources.
 		String[] items = context.getResources().
@@ -32,10 +42,12 @@ public class HelloWorldAdapter extends BaseAdapter {
 		
 		// to guarantee stable ids:
 		mIds = new ArrayList<Integer>();	
+		mIndex = new IdIndex(items.length);
 		int idCounter = 0;
 		
 		
 		for(String item : items) {
+			mIndex.put(idCounter, mItems.size());
 			mItems.add(item);
 			mIds.add(idCounter++);
 		}
@@ -63,6 +75,11 @@ public class HelloWorldAdapter extends BaseAdapter {
 		return true;
 	}
 	
+	@Override
+	public int getPositionForId(long id) {
+		return mIndex.get(id);
+	}
+	
 	 @Override
 	public int getViewTypeCount() {
 		 return ITEM_TYPE_COUNT;
@@ -80,31 +97,50 @@ public class HelloWorldAdapter extends BaseAdapter {
 	 */
 	public void remove(int position) {
 		mItems.remove(position);
-		mIds.remove(position);
-		notifyDataSetChanged();
+		mIndex.remove(mIds.remove(position));
+		mIndex.offsetPositions(position, -1);
+		
+		// only the removed item changed, so the
+		// CardView does not need to resync everything.
+		notifyItemRemoved(position);
 	}
 	
 
+	/**
+	 * inflates an unbound card. This method does not
+	 * access the items, so the CardView can call it
+	 * on a worker thread.
+	 */
+	@Override
+	public View inflateView(int viewType, ViewGroup parent) {
+		return inflateView(mWorkerInflater, viewType, parent);
+	}
+	
+	private View inflateView(LayoutInflater inflater, int viewType, ViewGroup parent) {
+		View view = inflater.inflate(R.layout.card_view, parent, false);
+
+		switch(viewType) {
+		case 0:
+			view.setBackgroundResource(R.drawable.card_background_orange);
+			break;
+		case 1:
+			view.setBackgroundResource(R.drawable.card_background_green);
+			break;
+		case 2:
+			view.setBackgroundResource(R.drawable.card_background_blue);
+			break;
+		case 3:
+			view.setBackgroundResource(R.drawable.card_background_red);
+			break;
+		}
+		return view;
+	}
+
 	@Override
 	public View getView(int position, View view, ViewGroup parent) {
 		if (view == null) {
-        	view = LayoutInflater.from(context)
-        			.inflate(R.layout.card_view, parent, false);
-
-    		switch( getItemViewType(position)) {
-    		case 0:
-    			view.setBackgroundResource(R.drawable.card_background_orange);
-    			break;
-    		case 1:
-    			view.setBackgroundResource(R.drawable.card_background_green);
-    			break;
-    		case 2:
-    			view.setBackgroundResource(R.drawable.card_background_blue);
-    			break;
-    		case 3:
-    			view.setBackgroundResource(R.drawable.card_background_red);
-    			break;
-    		}
+			view = inflateView(LayoutInflater.from(context), 
+					getItemViewType(position), parent);
         }
 
     	TextView text = (TextView) view;
@@ -25,8 +25,26 @@ public class MainActivity extends Activity implements OnItemSettleListener {
 		mAdapter = new HelloWorldAdapter(this);
 		cardView.setAdapter(mAdapter);
 		
+		// inflate the cards in the background
+		cardView.setAsyncInflation(true);
+		
+		// cards coming back are not bound again
+		cardView.setBoundViewCacheSize(2);
+		
+		// released cards keep the speed of the finger
+		cardView.setSpringSettle(true);
+		
+		// bind the next card while a swipe is still in progress
+		cardView.setPredictThreshold(0.3f);
+		
+		// draw the prepared card once before it appears
+		cardView.setWarmUp(true);
+		
 		// set settle listener
 		cardView.setOnItemSettleListener(this);
+		
+		// remove cards after the settle animation started
+		cardView.setDeferredCallbacks(true);
 	}
 
 	@Override
@@ -24,10 +24,10 @@ import android.widget.AdapterView;
  */
 public abstract class AbsStack extends AdapterView<Adapter> {
 	private static final String TAG = "AbsStack";
-    private static final boolean DEBUG = true;
+    private static final boolean DEBUG = false;
 
 	/**
-     * Maximum amount of time to spend in {@link #findSyncPosition()}
+     * Maximum amount of time to spend in {@link #findSyncPosition(long, int)}
      */
 	static final int SYNC_MAX_DURATION_MILLIS = 100;
 	
@@ -40,9 +40,38 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 	int mItemCount;
 	
 	Adapter mAdapter;
-	private DataSetObserver mDataSetObserver;
+	private AdapterDataSetObserver mDataSetObserver;
 	private View mEmptyView;
+	
+	/**
+	 * Data changes are resolved once per frame instead of immediately.
+	 */
+	private boolean mCoalesceDataChanges;
+	private boolean mDataChangePending;
+	private int mDataChangeCount;
+	private int mCoalescedDataChangeCount;
+	private final Runnable mResolveDataChange = new Runnable() {
+		@Override
+		public void run() {
+			resolveDataChange();
+		}
+	};
 
+	/**
+	 * Interface definition for adapters with stable ids, which know the
+	 * position of an id without a search, e.g. by keeping an {@link IdIndex}. 
+	 * The stack then synchronizes its selection after a data change in 
+	 * constant time, instead of scanning the adapter.
+	 */
+	public interface IdLookup {
+		/**
+		 * @param id
+		 *            The row id of an item.
+		 * @return the current position of the item, or
+		 *         {@link AdapterView#INVALID_POSITION} if the id is unknown.
+		 */
+		public int getPositionForId(long id);
+	}
 
 	
 	public AbsStack(Context context, AttributeSet attrs) {
@@ -68,6 +97,10 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 			mNextSelectedPosition = INVALID_POSITION;
 			mNextSelectedRowId = INVALID_ROW_ID;
 		}
+		
+		// the new adapter is synchronized from scratch.
+		mDataChangePending = false;
+		removeCallbacks(mResolveDataChange);
 
 		mAdapter = adapter;
 		
@@ -107,22 +140,77 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 	
 	@Override
 	public int getSelectedItemPosition() {
+		resolveDataChange();
 		return mSelectedPosition;
 	}
 
 	@Override
 	public long getSelectedItemId() {
+		resolveDataChange();
 		return mSelectedRowId;
 	}
 	
 	@Override
 	public int getCount() {
+		resolveDataChange();
 		return mItemCount;
 	}
 	
 	
+	/**
+	 * Coalesces data changes of the adapter. Instead of synchronizing the 
+	 * selection with every {@link DataSetObserver#onChanged()}, the stack 
+	 * marks itself dirty and synchronizes once, before the next frame. 
+	 * Reading the selection or the count synchronizes earlier, so they 
+	 * never return outdated values.
+	 * <p>
+	 * Item range changes of a {@link CardAdapter} are still applied
+	 * immediately, unless a coalesced change is pending.
+	 * 
+	 * @param coalesce true to synchronize data changes once per frame.
+	 */
+	public void setCoalesceDataChanges(boolean coalesce) {
+		mCoalesceDataChanges = coalesce;
+		if (!coalesce) {
+			resolveDataChange();
+		}
+	}
+	
+	public boolean isCoalesceDataChanges() {
+		return mCoalesceDataChanges;
+	}
+	
+	/**
+	 * @return how many data changes the adapter notified.
+	 */
+	public int getDataChangeCount() {
+		return mDataChangeCount;
+	}
+	
+	/**
+	 * @return how many data changes were merged into a pending 
+	 * synchronization, instead of causing an own one.
+	 */
+	public int getCoalescedDataChangeCount() {
+		return mCoalescedDataChangeCount;
+	}
+	
+	/**
+	 * Synchronizes a pending data change now. Subclasses call this before
+	 * they use positions, e.g. in layout or input handling.
+	 */
+	protected void resolveDataChange() {
+		if (mDataChangePending) {
+			mDataChangePending = false;
+			removeCallbacks(mResolveDataChange);
+			mDataSetObserver.handleChange();
+		}
+	}
+	
+	
 	@Override
 	public void setSelection(int position) {
+		resolveDataChange();
 		if (mAdapter != null && position < mItemCount && position >= 0) {
 			mNextSelectedPosition = position;
 			mNextSelectedRowId = mAdapter.getItemId(position);
@@ -150,7 +238,11 @@ public abstract class AbsStack extends AdapterView<Adapter> {
     }
 	
 	
-	private void fireOnSelected() {
+	/**
+	 * Notifies the {@link OnItemSelectedListener} about the current 
+	 * selection. Subclasses may override this to deliver the event later.
+	 */
+	protected void fireOnSelected() {
 		// notify listener
 		OnItemSelectedListener listener = getOnItemSelectedListener();
 		if (listener != null) {
@@ -167,6 +259,53 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 	
 	protected abstract void onSelectionChange(int position, long id);
 	
+	/**
+	 * Called when the adapter reports changed or invalidated data, before 
+	 * the selection is synchronized. Subclasses drop data they derived
+	 * from the adapter here.
+	 */
+	protected void onDataSetChanged() {
+	}
+	
+	/**
+	 * Called when the adapter reports inserted or removed items of a 
+	 * {@link CardAdapter}. Positions at or behind positionStart moved by delta.
+	 * For removals, the positions in front of positionStart down to 
+	 * positionStart + delta do not exist anymore.
+	 */
+	protected void onItemsShifted(int positionStart, int delta) {
+	}
+	
+	/**
+	 * Called when the adapter reports a moved item of a {@link CardAdapter}.
+	 * The positions between both positions moved by one towards 
+	 * fromPosition. Use {@link #movePosition(int, int, int)} to map them.
+	 */
+	protected void onItemsMoved(int fromPosition, int toPosition) {
+	}
+	
+	/**
+	 * @return the position after the item at fromPosition moved to 
+	 * toPosition.
+	 */
+	protected static int movePosition(int position, int fromPosition, int toPosition) {
+		if (position == fromPosition) {
+			return toPosition;
+		} else if (fromPosition < position && position <= toPosition) {
+			return position - 1;
+		} else if (toPosition <= position && position < fromPosition) {
+			return position + 1;
+		}
+		return position;
+	}
+	
+	/**
+	 * Called when the adapter reports changed items of a {@link CardAdapter}.
+	 * If the range contains the selection, its row id is already updated.
+	 */
+	protected void onItemsChanged(int positionStart, int itemCount) {
+	}
+	
 	
 	
 	/**
@@ -252,10 +391,20 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 		
 		if (DEBUG) Log.v(TAG, "restore instance state.");
 		
-		mNextSelectedPosition = ss.position;
-		mNextSelectedRowId = ss.selectedId;
+		// the saved row may have moved, e.g. while a cursor was stopped.
+		int position = INVALID_POSITION;
+		if (mAdapter != null && mItemCount > 0) {
+			position = findSyncPosition(ss.selectedId, ss.position);
+		}
 		
-		handleDataChanged();
+		if (position != INVALID_POSITION) {
+			mNextSelectedPosition = position;
+			mNextSelectedRowId = ss.selectedId;
+		} else {
+			mNextSelectedPosition = ss.position;
+			mNextSelectedRowId = ss.selectedId;
+			handleDataChanged();
+		}
 		checkSelectionChanged();
 	}
 	
@@ -264,7 +413,7 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 		if (mItemCount > 0) {
 			// See if we can find a position in the new data with the same
 			// id as the old selection
-			int  newPos = findSyncPosition();
+			int  newPos = findSyncPosition(mSelectedRowId, mSelectedPosition);
 			if (newPos != INVALID_POSITION) {
 				if (DEBUG) Log.v(TAG, "handleDataChanged: resynced position to "+ newPos);
 				
@@ -300,24 +449,28 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 	
 	
 	 /**
-     * Searches the adapter for a position matching mSyncRowId. The search starts at mSyncPosition
+     * Searches the adapter for a position matching idToMatch. Adapters implementing
+     * {@link IdLookup} are asked directly. Otherwise the search starts at seed
      * and then alternates between moving up and moving down until 1) we find the right position, or
      * 2) we run out of time, or 3) we have looked at every position
      *
-     * @return Position of the row that matches mSyncRowId, or {@link #INVALID_POSITION} if it can't
+     * @return Position of the row that matches idToMatch, or {@link #INVALID_POSITION} if it can't
      *         be found
      */
-    private int findSyncPosition() {
+    private int findSyncPosition(long idToMatch, int seed) {
         int count = mItemCount;
 
-        long idToMatch = mSelectedRowId;
-        int seed = mSelectedPosition;
-
         // If there isn't a selection don't hunt for it
         if (idToMatch == INVALID_ROW_ID) {
             return INVALID_POSITION;
         }
 
+        if (mAdapter instanceof IdLookup && mAdapter.hasStableIds()) {
+            // the index is complete, so there is nothing to scan.
+            int position = ((IdLookup) mAdapter).getPositionForId(idToMatch);
+            return position >= 0 && position < count ? position : INVALID_POSITION;
+        }
+
         // Pin seed to reasonable values
         seed = Math.max(0, seed);
         seed = Math.min(count - 1, seed);
@@ -379,14 +532,29 @@ public abstract class AbsStack extends AdapterView<Adapter> {
         return INVALID_POSITION;
     }
 
-	private class AdapterDataSetObserver extends DataSetObserver {
+	private class AdapterDataSetObserver extends CardAdapter.ItemRangeObserver {
 		private Parcelable mInstanceState = null;
 
 		@Override
 		public void onChanged() {
+			mDataChangeCount++;
+			if (mCoalesceDataChanges) {
+				if (mDataChangePending) {
+					mCoalescedDataChangeCount++;
+				} else {
+					mDataChangePending = true;
+					post(mResolveDataChange);
+				}
+				return;
+			}
+			handleChange();
+		}
+		
+		void handleChange() {
 			if (DEBUG) Log.v(TAG, "adapter data changed.");
 			
 			mItemCount = mAdapter.getCount();
+			onDataSetChanged();
 
 			// Detect the case where a cursor that was previously invalidated
 			// has been repopulated with new data.
@@ -404,6 +572,12 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 		@Override
 		public void onInvalidated() {
 			if (DEBUG) Log.v(TAG, "adapter invalid. Reset states.");
+			
+			// a pending change is obsolete.
+			mDataChangeCount++;
+			mDataChangePending = false;
+			removeCallbacks(mResolveDataChange);
+			
 			if (getAdapter().hasStableIds()) {
 				// Remember the current state for the case where our hosting
 				// activity is being stopped and later restarted
@@ -412,6 +586,7 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 
 			// Data is invalid so we should reset our state
 			mItemCount = 0;
+			onDataSetChanged();
 			mNextSelectedPosition = INVALID_POSITION;
 			mNextSelectedRowId = INVALID_ROW_ID;
 			
@@ -419,6 +594,95 @@ public abstract class AbsStack extends AdapterView<Adapter> {
 			updateEmptyStatus();
 
 		}
+		
+		@Override
+		public void onItemRangeChanged(int positionStart, int itemCount) {
+			// merge into a pending change, whose positions 
+			// are not resolved yet.
+			if (mSelectedPosition == INVALID_POSITION || mDataChangePending) {
+				onChanged();
+				return;
+			}
+			
+			if (DEBUG) Log.v(TAG, "adapter items changed: "+ positionStart +"+"+ itemCount);
+			
+			mItemCount = mAdapter.getCount();
+			if (mSelectedPosition >= positionStart && 
+					mSelectedPosition < positionStart + itemCount) {
+				mSelectedRowId = mAdapter.getItemId(mSelectedPosition);
+				mNextSelectedRowId = mSelectedRowId;
+			}
+			onItemsChanged(positionStart, itemCount);
+		}
+		
+		@Override
+		public void onItemRangeInserted(int positionStart, int itemCount) {
+			if (mSelectedPosition == INVALID_POSITION || mDataChangePending) {
+				onChanged();
+				return;
+			}
+			
+			if (DEBUG) Log.v(TAG, "adapter items inserted: "+ positionStart +"+"+ itemCount);
+			
+			mItemCount = mAdapter.getCount();
+			if (mSelectedPosition >= positionStart) {
+				offsetSelection(itemCount);
+			}
+			onItemsShifted(positionStart, itemCount);
+		}
+		
+		@Override
+		public void onItemRangeRemoved(int positionStart, int itemCount) {
+			if (mSelectedPosition == INVALID_POSITION || mDataChangePending) {
+				onChanged();
+				return;
+			}
+			
+			if (DEBUG) Log.v(TAG, "adapter items removed: "+ positionStart +"+"+ itemCount);
+			
+			mItemCount = mAdapter.getCount();
+			int positionEnd = positionStart + itemCount;
+			if (mSelectedPosition >= positionEnd) {
+				offsetSelection(-itemCount);
+				onItemsShifted(positionEnd, -itemCount);
+			} else if (mSelectedPosition >= positionStart) {
+				onItemsShifted(positionEnd, -itemCount);
+				
+				// the selected item is gone. Select the following 
+				// item, or wrap around like a settle does.
+				if (mItemCount == 0) {
+					mNextSelectedPosition = INVALID_POSITION;
+					mNextSelectedRowId = INVALID_ROW_ID;
+				} else {
+					mNextSelectedPosition = positionStart < mItemCount ? positionStart : 0;
+					mNextSelectedRowId = mAdapter.getItemId(mNextSelectedPosition);
+				}
+				checkSelectionChanged();
+			} else {
+				onItemsShifted(positionEnd, -itemCount);
+			}
+			updateEmptyStatus();
+		}
+		
+		@Override
+		public void onItemMoved(int fromPosition, int toPosition) {
+			if (mSelectedPosition == INVALID_POSITION || mDataChangePending) {
+				onChanged();
+				return;
+			}
+			
+			if (DEBUG) Log.v(TAG, "adapter item moved: "+ fromPosition +"->"+ toPosition);
+			
+			mSelectedPosition = movePosition(mSelectedPosition, fromPosition, toPosition);
+			mNextSelectedPosition = mSelectedPosition;
+			
+			onItemsMoved(fromPosition, toPosition);
+		}
+		
+		private void offsetSelection(int delta) {
+			mSelectedPosition += delta;
+			mNextSelectedPosition = mSelectedPosition;
+		}
 	}
 	
 
@@ -0,0 +1,136 @@
+package de.pecheur.card;
+
+import java.util.ArrayList;
+
+import android.database.DataSetObserver;
+import android.widget.BaseAdapter;
+
+/**
+ * CardAdapter is a {@link BaseAdapter}, which can describe a data change
+ * precisely. Besides {@link #notifyDataSetChanged()}, it notifies inserted,
+ * removed, moved and changed item ranges. A {@link CardView} then shifts its
+ * selection arithmetically and only rebinds the selected card, if its own
+ * item changed. Observers, which don't understand item ranges, receive
+ * {@link DataSetObserver#onChanged()} instead.
+ */
+public abstract class CardAdapter extends BaseAdapter {
+	private final ArrayList<DataSetObserver> mObservers = new ArrayList<DataSetObserver>();
+
+	/**
+	 * DataSetObserver, which receives the item ranges of a data change. By
+	 * default each range event falls back to {@link #onChanged()}.
+	 */
+	public static abstract class ItemRangeObserver extends DataSetObserver {
+		/**
+		 * The items in the range changed, but kept their positions.
+		 */
+		public void onItemRangeChanged(int positionStart, int itemCount) {
+			onChanged();
+		}
+
+		/**
+		 * Items were inserted at positionStart. Items at or behind this
+		 * position moved by itemCount.
+		 */
+		public void onItemRangeInserted(int positionStart, int itemCount) {
+			onChanged();
+		}
+
+		/**
+		 * Items were removed from positionStart. Items behind the range
+		 * moved by -itemCount.
+		 */
+		public void onItemRangeRemoved(int positionStart, int itemCount) {
+			onChanged();
+		}
+
+		/**
+		 * A single item moved from one position to another.
+		 */
+		public void onItemMoved(int fromPosition, int toPosition) {
+			onChanged();
+		}
+	}
+
+
+	@Override
+	public void registerDataSetObserver(DataSetObserver observer) {
+		super.registerDataSetObserver(observer);
+		mObservers.add(observer);
+	}
+
+	@Override
+	public void unregisterDataSetObserver(DataSetObserver observer) {
+		super.unregisterDataSetObserver(observer);
+		mObservers.remove(observer);
+	}
+
+	/**
+	 * Notifies the observers, that the items in the range changed.
+	 */
+	public void notifyItemRangeChanged(int positionStart, int itemCount) {
+		// go backwards, so observers can unregister themselves.
+		for (int i = mObservers.size() - 1; i >= 0; i--) {
+			DataSetObserver observer = mObservers.get(i);
+			if (observer instanceof ItemRangeObserver) {
+				((ItemRangeObserver) observer).onItemRangeChanged(positionStart, itemCount);
+			} else {
+				observer.onChanged();
+			}
+		}
+	}
+
+	public void notifyItemChanged(int position) {
+		notifyItemRangeChanged(position, 1);
+	}
+
+	/**
+	 * Notifies the observers, that items were inserted at positionStart.
+	 */
+	public void notifyItemRangeInserted(int positionStart, int itemCount) {
+		for (int i = mObservers.size() - 1; i >= 0; i--) {
+			DataSetObserver observer = mObservers.get(i);
+			if (observer instanceof ItemRangeObserver) {
+				((ItemRangeObserver) observer).onItemRangeInserted(positionStart, itemCount);
+			} else {
+				observer.onChanged();
+			}
+		}
+	}
+
+	public void notifyItemInserted(int position) {
+		notifyItemRangeInserted(position, 1);
+	}
+
+	/**
+	 * Notifies the observers, that items were removed from positionStart.
+	 */
+	public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+		for (int i = mObservers.size() - 1; i >= 0; i--) {
+			DataSetObserver observer = mObservers.get(i);
+			if (observer instanceof ItemRangeObserver) {
+				((ItemRangeObserver) observer).onItemRangeRemoved(positionStart, itemCount);
+			} else {
+				observer.onChanged();
+			}
+		}
+	}
+
+	public void notifyItemRemoved(int position) {
+		notifyItemRangeRemoved(position, 1);
+	}
+
+	/**
+	 * Notifies the observers, that an item moved.
+	 */
+	public void notifyItemMoved(int fromPosition, int toPosition) {
+		for (int i = mObservers.size() - 1; i >= 0; i--) {
+			DataSetObserver observer = mObservers.get(i);
+			if (observer instanceof ItemRangeObserver) {
+				((ItemRangeObserver) observer).onItemMoved(fromPosition, toPosition);
+			} else {
+				observer.onChanged();
+			}
+		}
+	}
+}
@@ -0,0 +1,401 @@
+package de.pecheur.card;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+
+/**
+ * CardCursorAdapter exposes the rows of a {@link Cursor} to a
+ * {@link CardView}. Unlike {@link android.widget.CursorAdapter}, it never
+ * queries on the UI thread. {@link #loadCursor()} runs on a background
+ * thread, which also fills the cursor windows and reads the row ids into
+ * one compact index per {@value #WINDOW_ROWS} rows. The UI thread receives
+ * the cursor together with its index in one step, so the count, the ids and
+ * their positions always describe the same cursor.
+ * <p>
+ * The cursor must contain a column named "_id". Changes of its content are
+ * observed and requeried in the background as well. The stack keeps its
+ * selection by row id.
+ * <p>
+ * To release the cursor while the activity is stopped, call
+ * {@link #stopQuery()}. The stack then remembers its selection and restores
+ * it, as soon as the cursor of the next {@link #startQuery()} arrives.
+ */
+public abstract class CardCursorAdapter extends CardAdapter implements AbsStack.IdLookup {
+	private static final String TAG = "CardCursorAdapter";
+	private static final boolean DEBUG = false;
+
+	/**
+	 * Rows per id window. Offsets within a window fit into a short.
+	 */
+	static final int WINDOW_ROWS = 1024;
+	private static final IdWindow[] NO_WINDOWS = new IdWindow[0];
+
+	private static ExecutorService sQueryExecutor;
+
+	private final Context mContext;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final ChangeObserver mChangeObserver = new ChangeObserver(mHandler);
+	private Executor mExecutor;
+
+	private Cursor mCursor;
+	private IdWindow[] mWindows = NO_WINDOWS;
+	private int mCount;
+
+	/**
+	 * Incremented by every query, so results of outdated queries are
+	 * dropped.
+	 */
+	private int mGeneration;
+	private boolean mQuerying;
+
+
+	public CardCursorAdapter(Context context) {
+		mContext = context;
+	}
+
+	/**
+	 * Queries the cursor. Called on a background thread.
+	 *
+	 * @return the cursor, or null if there is no data.
+	 */
+	protected abstract Cursor loadCursor();
+
+	/**
+	 * Makes a new view to hold the data of the cursor.
+	 *
+	 * @param cursor
+	 *            The cursor, already moved to the correct position.
+	 */
+	public abstract View newView(Context context, Cursor cursor, ViewGroup parent);
+
+	/**
+	 * Binds an existing view to the data of the cursor.
+	 *
+	 * @param cursor
+	 *            The cursor, already moved to the correct position.
+	 */
+	public abstract void bindView(View view, Context context, Cursor cursor);
+
+	/**
+	 * Sets the executor, which runs the queries. By default, queries run one
+	 * after another on a shared background thread.
+	 */
+	public void setQueryExecutor(Executor executor) {
+		mExecutor = executor;
+	}
+
+	/**
+	 * Starts a query in the background. The current cursor stays in use
+	 * until the new one arrives. Results of a previous query, which is still
+	 * running, are dropped.
+	 */
+	public void startQuery() {
+		final int generation = ++mGeneration;
+		mQuerying = true;
+		if (DEBUG) Log.v(TAG, "start query " + generation);
+
+		getQueryExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				Cursor cursor = null;
+				final IdWindow[] windows;
+				final int count;
+
+				try {
+					cursor = loadCursor();
+					if (cursor != null) {
+						// reading the ids fills the cursor windows here
+						// instead of on the UI thread.
+						count = cursor.getCount();
+						windows = readWindows(cursor, count);
+						cursor.moveToPosition(0);
+					} else {
+						count = 0;
+						windows = NO_WINDOWS;
+					}
+				} catch (RuntimeException e) {
+					Log.w(TAG, "query " + generation + " failed", e);
+					if (cursor != null) {
+						cursor.close();
+					}
+					mHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							onQueryFailed(generation);
+						}
+					});
+					return;
+				}
+
+				final Cursor result = cursor;
+				mHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						onQueryFinished(generation, result, windows, count);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Closes the cursor and invalidates the data. Running queries are
+	 * dropped.
+	 */
+	public void stopQuery() {
+		mGeneration++;
+		mQuerying = false;
+		swapCursor(null, NO_WINDOWS, 0);
+	}
+
+	/**
+	 * @return true, if a query is running.
+	 */
+	public boolean isQuerying() {
+		return mQuerying;
+	}
+
+	/**
+	 * Called on the UI thread with the result of a query.
+	 */
+	private void onQueryFinished(int generation, Cursor cursor, IdWindow[] windows, int count) {
+		if (generation != mGeneration) {
+			// a newer query was started meanwhile.
+			if (cursor != null) {
+				cursor.close();
+			}
+			return;
+		}
+		if (DEBUG) Log.v(TAG, "query " + generation + " finished: " + count + " rows");
+
+		mQuerying = false;
+		swapCursor(cursor, windows, count);
+	}
+
+	/**
+	 * Called on the UI thread, if a query threw. The current cursor stays
+	 * in use.
+	 */
+	private void onQueryFailed(int generation) {
+		if (generation == mGeneration) {
+			mQuerying = false;
+		}
+	}
+
+	private void swapCursor(Cursor cursor, IdWindow[] windows, int count) {
+		Cursor old = mCursor;
+		if (old != null) {
+			old.unregisterContentObserver(mChangeObserver);
+			old.close();
+		}
+
+		mCursor = cursor;
+		mWindows = windows;
+		mCount = count;
+
+		if (cursor != null) {
+			cursor.registerContentObserver(mChangeObserver);
+			notifyDataSetChanged();
+		} else if (old != null) {
+			notifyDataSetInvalidated();
+		}
+	}
+
+	public Cursor getCursor() {
+		return mCursor;
+	}
+
+	@Override
+	public int getCount() {
+		return mCursor == null ? 0 : mCount;
+	}
+
+	/**
+	 * @return the cursor moved to the position.
+	 */
+	@Override
+	public Cursor getItem(int position) {
+		if (mCursor != null && mCursor.moveToPosition(position)) {
+			return mCursor;
+		}
+		return null;
+	}
+
+	@Override
+	public long getItemId(int position) {
+		if (mCursor != null && position >= 0 && position < mCount) {
+			return mWindows[position / WINDOW_ROWS].getId(position % WINDOW_ROWS);
+		}
+		return AdapterView.INVALID_ROW_ID;
+	}
+
+	@Override
+	public boolean hasStableIds() {
+		return true;
+	}
+
+	@Override
+	public int getPositionForId(long id) {
+		final IdWindow[] windows = mWindows;
+		for (int i = 0; i < windows.length; i++) {
+			int offset = windows[i].indexOf(id);
+			if (offset >= 0) {
+				return i * WINDOW_ROWS + offset;
+			}
+		}
+		return AdapterView.INVALID_POSITION;
+	}
+
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent) {
+		if (mCursor == null) {
+			throw new IllegalStateException("this should only be called when the cursor is valid");
+		}
+		if (!mCursor.moveToPosition(position)) {
+			throw new IllegalStateException("couldn't move cursor to position " + position);
+		}
+
+		View view = convertView;
+		if (view == null) {
+			view = newView(mContext, mCursor, parent);
+		}
+		bindView(view, mContext, mCursor);
+		return view;
+	}
+
+	/**
+	 * Reads the ids of all rows into windows. Called on a background thread.
+	 */
+	private static IdWindow[] readWindows(Cursor cursor, int count) {
+		int column = cursor.getColumnIndexOrThrow("_id");
+		IdWindow[] windows = new IdWindow[(count + WINDOW_ROWS - 1) / WINDOW_ROWS];
+		long[] ids = new long[Math.min(count, WINDOW_ROWS)];
+
+		for (int w = 0; w < windows.length; w++) {
+			int start = w * WINDOW_ROWS;
+			int size = Math.min(WINDOW_ROWS, count - start);
+			for (int i = 0; i < size; i++) {
+				cursor.moveToPosition(start + i);
+				ids[i] = cursor.getLong(column);
+			}
+			windows[w] = new IdWindow(ids, size);
+		}
+		return windows;
+	}
+
+	private Executor getQueryExecutor() {
+		if (mExecutor != null) {
+			return mExecutor;
+		}
+		if (sQueryExecutor == null) {
+			sQueryExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, "CardCursorAdapter query");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sQueryExecutor;
+	}
+
+
+	/**
+	 * The ids of up to {@value #WINDOW_ROWS} consecutive rows. The ids are
+	 * kept sorted, together with the offsets of their rows and the reverse
+	 * mapping as shorts. A window needs 12 bytes per row, instead of the 8
+	 * bytes of a plain id array plus the sparse table of an {@link IdIndex}.
+	 * An id is found by a binary search in each window.
+	 */
+	private static final class IdWindow {
+		private final long[] mSortedIds;
+
+		/**
+		 * Row offsets in the order of the sorted ids.
+		 */
+		private final short[] mRows;
+
+		/**
+		 * Indices into the sorted ids in the order of the rows.
+		 */
+		private final short[] mRanks;
+
+		/**
+		 * @param ids the ids in row order, of which the first size are used.
+		 */
+		IdWindow(long[] ids, int size) {
+			mSortedIds = Arrays.copyOf(ids, size);
+			Arrays.sort(mSortedIds);
+			mRows = new short[size];
+			mRanks = new short[size];
+			Arrays.fill(mRows, (short) -1);
+
+			for (int row = 0; row < size; row++) {
+				int i = Arrays.binarySearch(mSortedIds, ids[row]);
+				// rows with the same id take the following slots.
+				while (i > 0 && mSortedIds[i - 1] == ids[row]) {
+					i--;
+				}
+				while (mRows[i] != -1) {
+					i++;
+				}
+				mRows[i] = (short) row;
+				mRanks[row] = (short) i;
+			}
+		}
+
+		long getId(int row) {
+			return mSortedIds[mRanks[row]];
+		}
+
+		/**
+		 * @return the row offset of the id, or -1 if the id isn't in this
+		 *         window.
+		 */
+		int indexOf(long id) {
+			int i = Arrays.binarySearch(mSortedIds, id);
+			return i >= 0 ? mRows[i] : -1;
+		}
+	}
+
+
+	/**
+	 * Requeries in the background, when the content of the cursor changes.
+	 */
+	private class ChangeObserver extends ContentObserver {
+		public ChangeObserver(Handler handler) {
+			super(handler);
+		}
+
+		@Override
+		public boolean deliverSelfNotifications() {
+			return true;
+		}
+
+		@Override
+		public void onChange(boolean selfChange) {
+			startQuery();
+		}
+	}
+}
@@ -2,28 +2,42 @@ package de.pecheur.card;
 
 
 import java.util.ArrayList;
-
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ObjectAnimator;
-import android.animation.PropertyValuesHolder;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.animation.TimeInterpolator;
+import android.animation.ValueAnimator;
+import android.animation.ValueAnimator.AnimatorUpdateListener;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.GestureDetector;
-import android.view.GestureDetector.OnGestureListener;
+import android.util.SparseIntArray;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnKeyListener;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.AnimationUtils;
 import android.view.animation.Interpolator;
 import android.widget.Adapter;
 import android.widget.AdapterView;
 
-public class CardView extends AbsStack implements OnGestureListener, OnKeyListener {
+public class CardView extends AbsStack implements OnKeyListener {
 	private static final String TAG = "CardView";
-	private static final boolean DEBUG = true;
+	private static final boolean DEBUG = false;
 
 	/**
 	 * Duration of a view's animated appearing
@@ -34,6 +48,12 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 	 * Duration of a view's animated disappearing
 	 */
 	private static final int DISCARD_DURATION = 250; // ms
+	
+	/**
+	 * Default amount of cards, which are animated out at the same time. 
+	 * Further discards finish the oldest one immediately.
+	 */
+	private static final int MAX_DISCARDING_CARDS = 3;
 
 	/**
 	 * Time influencing factor of the up, down, mid view move
@@ -62,13 +82,67 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 	public static final int SCROLL_STATE_DRAGGING = 2;
 	
 	/**
-	 * Makes sure that the size of recycled views does not exceed the 
-	 * size of maximum visible views on screen. (This can happen if an adapter 
-	 * does not recycle its views). This amount is also depend on 
-	 * {@link DISCARD_DURATION} and {@link APPEARING_DURATION}. 
+	 * Default amount of recycled views of all types together. It makes sure
+	 * that the recycled views do not exceed the size of maximum visible views 
+	 * on screen. (This can happen if an adapter does not recycle its views). 
+	 * This amount is also depend on {@link DISCARD_DURATION} and 
+	 * {@link APPEARING_DURATION}. 
 	 */
-	private static final int RECYCLE_BIN_SIZE = 7; // ms
+	private static final int RECYCLE_BIN_SIZE = 7; // views
 
+	/**
+	 * Delay before the lookahead views are prepared after a selection change.
+	 * This keeps the binding work out of the appearing animation.
+	 */
+	private static final int LOOKAHEAD_DELAY = APPEARING_DURATION; // ms
+	
+	/**
+	 * Time, for which the drag is extrapolated with its velocity to predict
+	 * a commit.
+	 */
+	private static final int PREDICT_LEAD_TIME = 100; // ms
+	
+	/**
+	 * Key repeats, after which a held D-pad key skips one more card per 
+	 * repeat. The step is limited to {@link #MAX_KEY_STEP}.
+	 */
+	private static final int KEY_REPEAT_ACCELERATION = 5;
+	private static final int MAX_KEY_STEP = 50; // cards
+	
+	/**
+	 * Factor of the appearing and discard durations for repeated keys.
+	 */
+	private static final float KEY_REPEAT_DURATION_SCALE = 0.4f;
+	
+	/**
+	 * Duration of the combined transition of a batch swipe.
+	 */
+	private static final int BATCH_SWIPE_DURATION = 300; // ms
+	
+	/**
+	 * Natural frequency of the critically damped settle spring.
+	 */
+	private static final float SPRING_FREQUENCY = 20f; // rad/s
+	
+	/**
+	 * A settle spring rests, if the card is closer to its target and slower
+	 * than these values.
+	 */
+	private static final float SPRING_REST_DISTANCE = 0.5f; // px
+	private static final float SPRING_REST_VELOCITY = 10f; // px/s
+	
+	/**
+	 * Fraction of the way, after which a discarded card is invisible enough
+	 * to be removed.
+	 */
+	private static final float SPRING_DISCARD_FRACTION = 0.99f;
+	
+	/**
+	 * Scale reduction and default visible offset of each slot below the 
+	 * selected card in the stack depth mode.
+	 */
+	private static final float STACK_SLOT_SCALE = 0.05f;
+	private static final int STACK_SLOT_OFFSET = 8; // dp
 	
 
 	private int mScrollState = SCROLL_STATE_IDLE;
@@ -79,15 +153,239 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 
 	private View mSelectedView;
 	private boolean mSelectedViewDetached;
+	private float mSelectionDurationScale = 1;
+	
+	/**
+	 * Stack depth mode: the cards below the selection peek out. The top 
+	 * slots show prepared lookahead views, deeper ones a shared drawable.
+	 */
+	private int mStackDepth = 1;
+	private int mStackPlaceholderCount;
+	private Drawable mStackPlaceholder;
+	private int mStackSlotOffset;
 
 	/**
 	 * Determines speed during touch scrolling
 	 */
 	private float mBaseLineFlingVelocity;
 	private float mFlingVelocityInfluence;
-	private GestureDetector mGestureDetector;
-	private RecycleBin mRecycleBin;
+	
+	/**
+	 * Drag engine: touches are tracked without a GestureDetector. The card
+	 * is dragged as soon as the touch slop is crossed and follows the 
+	 * finger once per frame.
+	 */
+	private int mTouchSlop;
+	private float mMinimumFlingVelocity;
+	private float mMaximumFlingVelocity;
+	private final VelocityEstimator mVelocityEstimator = new VelocityEstimator();
+	private float mDownX;
+	private float mDownY;
+	
+	/**
+	 * False, as soon as the touch moved beyond the slop in any direction. 
+	 * Such a touch is neither a tap nor a long press.
+	 */
+	private boolean mAlwaysInTapRegion;
+	private float mDragStartY;
+	private float mDragStartTranslation;
+	private float mDragY;
+	private long mDragEventTime;
+	private boolean mDragPending;
+	private long mDragLatency;
+	private boolean mLongPressDisabled;
+	private boolean mLongPressed;
+	private long mLastTouchTime;
+	private int mLastTouchAction;
+	private final Runnable mLongPress = new Runnable() {
+		@Override
+		public void run() {
+			mLongPressed = true;
+			performLongPress();
+		}
+	};
+	private RecyclePool mRecyclePool;
+	private boolean mOwnsRecyclePool = true;
+	
+	/**
+	 * Releases retained views, when the system runs short on memory.
+	 */
+	private final ComponentCallbacks2 mTrimCallbacks = new ComponentCallbacks2() {
+		@Override
+		public void onTrimMemory(int level) {
+			trimMemory(level);
+		}
+		
+		@Override
+		public void onLowMemory() {
+			trimMemory(TRIM_MEMORY_COMPLETE);
+		}
+		
+		@Override
+		public void onConfigurationChanged(Configuration newConfig) {
+		}
+	};
+	
+	/**
+	 * Incremented by every change of the adapter's items, so views bound
+	 * before are not kept as bound views.
+	 */
+	private int mDataGeneration;
+	
+	/**
+	 * Pool keys of the adapter's view types.
+	 */
+	private Object[] mViewTypeKeys;
 	private OnItemSettleListener mSettleListener;
+	private OnItemsSettleListener mItemsSettleListener;
+
+	/**
+	 * Views bound ahead of time for the positions following the selection.
+	 * They are measured, detached and invisible until they get selected.
+	 */
+	private final ArrayList<View> mLookaheadViews = new ArrayList<View>();
+	private int mLookahead;
+	private int mLookaheadHits;
+	private int mLookaheadMisses;
+	private final Runnable mFillLookahead = new Runnable() {
+		@Override
+		public void run() {
+			fillLookahead();
+		}
+	};
+	
+	/**
+	 * Predictive preparation: the next card is prepared during a drag, as 
+	 * soon as the drag is likely to commit.
+	 */
+	private float mPredictThreshold;
+	private boolean mPredicted;
+	private int mPredictions;
+	private final Runnable mPrepareNext = new Runnable() {
+		@Override
+		public void run() {
+			prepareNext();
+		}
+	};
+	
+	/**
+	 * Executor shared by all CardViews, which inflate their views in the
+	 * background and did not set an own executor.
+	 */
+	private static ExecutorService sInflationExecutor;
+	
+	private boolean mAsyncInflation;
+	private Executor mInflationExecutor;
+	private Handler mHandler;
+	
+	/**
+	 * Number of pending background inflations per view type.
+	 */
+	private final SparseIntArray mPendingInflations = new SparseIntArray();
+	
+	/**
+	 * Items in flight of the prefetch window.
+	 */
+	private int mPrefetchWindow;
+	private int[] mPrefetchPositions = new int[0];
+	private long[] mPrefetchIds = new long[0];
+	private int mPrefetchCount;
+	private int mPrefetchIssued;
+	private int mPrefetchUsed;
+	private int mPrefetchWasted;
+	private final Runnable mUpdatePrefetch = new Runnable() {
+		@Override
+		public void run() {
+			updatePrefetch(mSelectedPosition, mSelectedRowId);
+		}
+	};
+	
+	/**
+	 * All running card animations. They are stepped together from a single
+	 * frame callback with a shared time base.
+	 */
+	private final ArrayList<CardAnimation> mRunningAnimations = new ArrayList<CardAnimation>();
+	
+	/**
+	 * Animations of recycled views, which are handed to the next views of 
+	 * this CardView.
+	 */
+	private final ArrayList<CardAnimation> mFreeAnimations = new ArrayList<CardAnimation>();
+	private ValueAnimator mFrameAnimator;
+	private int mMaxDiscardingCards = MAX_DISCARDING_CARDS;
+	private final AnimatorUpdateListener mFrameCallback = new AnimatorUpdateListener() {
+		@Override
+		public void onAnimationUpdate(ValueAnimator animation) {
+			stepAnimations();
+		}
+	};
+	
+	/**
+	 * Render optimization: moving cards are drawn from a hardware layer.
+	 */
+	private boolean mRenderOptimization;
+	
+	/**
+	 * Statistics of the last drawn frame.
+	 */
+	private long mFrameDrawTime;
+	private int mFrameDrawnCards;
+	private long mFrameDrawnArea;
+	private float mFrameOverdraw;
+	
+	/**
+	 * Warm-up: prepared cards are rendered into a hardware layer while the
+	 * stack is idle. The first draw of each selected card is timed, 
+	 * separately for warmed and cold cards.
+	 */
+	private boolean mWarmUp;
+	private final Runnable mWarmUpNext = new Runnable() {
+		@Override
+		public void run() {
+			warmUpLookahead();
+		}
+	};
+	private int mWarmUps;
+	private int mWarmFirstDraws;
+	private long mWarmFirstDrawTime;
+	private int mColdFirstDraws;
+	private long mColdFirstDrawTime;
+	
+	/**
+	 * Snapshot discard: outgoing cards are animated as cached drawings,
+	 * while their views are recycled immediately.
+	 */
+	private boolean mSnapshotDiscard;
+	private final ArrayList<Snapshot> mSnapshots = new ArrayList<Snapshot>();
+	private final ArrayList<Snapshot> mFreeSnapshots = new ArrayList<Snapshot>();
+	private final Canvas mSnapshotCanvas = new Canvas();
+	private final Paint mSnapshotPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	
+	/**
+	 * Spring settle: released cards settle with a spring, which starts at
+	 * the release velocity.
+	 */
+	private boolean mSpringSettle;
+	
+	/**
+	 * Deferred callbacks: selection and settle events are queued and 
+	 * delivered together after the next animation frame.
+	 */
+	private static final int EVENT_SELECTED = 0;
+	private static final int EVENT_UP = 1;
+	private static final int EVENT_DOWN = 2;
+	private static final int EVENT_ITEMS_UP = 3;
+	private static final int EVENT_ITEMS_DOWN = 4;
+	private boolean mDeferCallbacks;
+	private boolean mCallbacksScheduled;
+	private final ArrayList<CallbackEvent> mPendingEvents = new ArrayList<CallbackEvent>();
+	private final ArrayList<CallbackEvent> mFreeEvents = new ArrayList<CallbackEvent>();
+	private final Runnable mDispatchEvents = new Runnable() {
+		@Override
+		public void run() {
+			dispatchEvents();
+		}
+	};
 
 	/**
 	 * Interface definition for a callback to be invoked when an item in this
@@ -134,6 +432,98 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 		public void onItemDown(AdapterView<?> parent, View view, int position,
 				long id);
 	}
+	
+	/**
+	 * Interface definition for a callback to be invoked when several items 
+	 * were moved up, or down at once by {@link CardView#swipeUp(int)} or 
+	 * {@link CardView#swipeDown(int)}.
+	 */
+	public interface OnItemsSettleListener {
+		/**
+		 * Callback method to be invoked when items in this AdapterView were
+		 * moved up.
+		 * 
+		 * @param parent
+		 *            The AdapterView where the move happened.
+		 * @param positions
+		 *            The positions of the items in the adapter, in the order
+		 *            they were stacked.
+		 * @param ids
+		 *            The row ids of the items.
+		 */
+		public void onItemsUp(AdapterView<?> parent, int[] positions, long[] ids);
+
+		/**
+		 * Callback method to be invoked when items in this AdapterView were
+		 * moved down.
+		 * 
+		 * @param parent
+		 *            The AdapterView where the move happened.
+		 * @param positions
+		 *            The positions of the items in the adapter, in the order
+		 *            they were stacked.
+		 * @param ids
+		 *            The row ids of the items.
+		 */
+		public void onItemsDown(AdapterView<?> parent, int[] positions, long[] ids);
+	}
+	
+	/**
+	 * Interface definition for adapters, which warm the data of upcoming 
+	 * cards, e.g. by decoding images or querying a database on a background 
+	 * executor. The CardView keeps a bounded window of prefetched positions
+	 * following the selection. All methods are called on the UI thread and
+	 * must return immediately.
+	 * <p>
+	 * Prepared cards are detached, so invalidating their views doesn't 
+	 * redraw the stack. If loaded data changes a card, which is already
+	 * bound, notify the change by {@link CardAdapter#notifyItemChanged(int)}.
+	 */
+	public interface Prefetcher {
+		/**
+		 * Starts loading the data of an upcoming item.
+		 * 
+		 * @param position
+		 *            The current position of the item.
+		 * @param id
+		 *            The row id of the item.
+		 */
+		public void prefetch(int position, long id);
+		
+		/**
+		 * Cancels a prefetch, because the item left the window or its data 
+		 * changed. Loaded data may be dropped.
+		 * 
+		 * @param position
+		 *            The current position of the item, or 
+		 *            {@link AdapterView#INVALID_POSITION} if it was removed.
+		 * @param id
+		 *            The row id passed to {@link #prefetch(int, long)}.
+		 */
+		public void cancelPrefetch(int position, long id);
+	}
+	
+	/**
+	 * Interface definition for adapters, which can inflate their views
+	 * without binding them. If the asynchronous inflation of a CardView is
+	 * enabled, the views are inflated on a worker thread and handed to 
+	 * {@link Adapter#getView(int, View, ViewGroup)} as convert views.
+	 */
+	public interface ViewInflater {
+		/**
+		 * Inflates an unbound view of the given type. This method is called 
+		 * on a worker thread, so it must not touch the adapter's data.
+		 * 
+		 * @param viewType
+		 *            The view type as returned by
+		 *            {@link Adapter#getItemViewType(int)}.
+		 * @param parent
+		 *            The CardView, which will show the view. Use it only for
+		 *            generating layout parameters.
+		 * @return a new view of the given type.
+		 */
+		public View inflateView(int viewType, ViewGroup parent);
+	}
 
 	private static final Interpolator sInterpolator = new Interpolator() {
 		public float getInterpolation(float t) {
@@ -141,6 +531,12 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 			return t * t * t * t * t + 1.0f;
 		}
 	};
+	
+	/**
+	 * Interpolator of the appearing and discard animation.
+	 */
+	private static final Interpolator sDefaultInterpolator = 
+			new AccelerateDecelerateInterpolator();
 
 	public CardView(Context context, AttributeSet attrs) {
 		super(context, attrs, 0);
@@ -159,14 +555,18 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 	}
 
 	private void init(Context context) {
-		mGestureDetector = new GestureDetector(context, this, null, true);
-		mGestureDetector.setIsLongpressEnabled(isLongClickable());
-		mRecycleBin = new RecycleBin();
+		ViewConfiguration configuration = ViewConfiguration.get(context);
+		mTouchSlop = configuration.getScaledTouchSlop();
+		mMinimumFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+		mMaximumFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+		mRecyclePool = new RecyclePool(RECYCLE_BIN_SIZE);
+		mHandler = new Handler(Looper.getMainLooper());
 
 		setWillNotDraw(false);
 		setClipChildren(false);
 
 		float density = context.getResources().getDisplayMetrics().density;
+		mStackSlotOffset = (int) (STACK_SLOT_OFFSET * density + 0.5f);
 		mBaseLineFlingVelocity = 2500.0f * density;
 		mFlingVelocityInfluence = 2.0f;
 		this.setFocusable(true);
@@ -176,16 +576,63 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 
 	@Override
 	public void setAdapter(Adapter adapter) {
-		// clean up recycle bin
-		mRecycleBin.clear();
+		// clean up lookahead views. The recycle pool keeps its views
+		// for adapters with the same view types.
+		clearLookahead();
+		mPendingInflations.clear();
+		cancelPrefetches();
+		if (mAdapter != null) {
+			mRecyclePool.unbindAll(mAdapter);
+		}
+		
+		// queued callbacks refer to positions of the old adapter.
+		dispatchEvents();
+		
+		// views of the old adapter, which are recycled after their discard,
+		// must not be kept bound for the new adapter.
+		mDataGeneration++;
 		
 		if (adapter != null) {
 			int viewTypeCount = adapter.getViewTypeCount();
-			mRecycleBin.setViewTypeCount(viewTypeCount);
+			if (viewTypeCount < 1) {
+				throw new IllegalArgumentException(
+						"Can't have a viewTypeCount < 1");
+			}
+			
+			mViewTypeKeys = new Object[viewTypeCount];
+			for (int i = 0; i < viewTypeCount; i++) {
+				if (adapter instanceof RecyclePool.StableViewTypes) {
+					mViewTypeKeys[i] = ((RecyclePool.StableViewTypes) adapter)
+							.getViewTypeKey(i);
+				} else {
+					// other instances may inflate other layouts.
+					mViewTypeKeys[i] = new AdapterViewType(adapter, i);
+				}
+			}
+		} else {
+			mViewTypeKeys = null;
 		}
 		
 		super.setAdapter(adapter);
 	}
+	
+	/**
+	 * Sets the pool, which keeps the recycled views of this CardView. A pool
+	 * can be shared between several CardViews with views of the same context.
+	 * 
+	 * @param pool to share, or null for a private pool.
+	 */
+	public void setRecyclePool(RecyclePool pool) {
+		mOwnsRecyclePool = pool == null;
+		if (pool == null) {
+			pool = new RecyclePool(RECYCLE_BIN_SIZE);
+		}
+		mRecyclePool = pool;
+	}
+	
+	public RecyclePool getRecyclePool() {
+		return mRecyclePool;
+	}
 
 	public void setOnItemSettleListener(OnItemSettleListener listener) {
 		mSettleListener = listener;
@@ -195,113 +642,1350 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 		return mSettleListener;
 	}
 	
-
+	public void setOnItemsSettleListener(OnItemsSettleListener listener) {
+		mItemsSettleListener = listener;
+	}
+	
+	public OnItemsSettleListener getOnItemsSettleListener() {
+		return mItemsSettleListener;
+	}
+	
 	/**
-	 * intern method for setting the selection. The adapter need to be set.
+	 * Defers the {@link OnItemSelectedListener} and {@link OnItemSettleListener} 
+	 * callbacks. Instead of calling them while a gesture starts the settle 
+	 * animation, they are queued and delivered in one batch after the next 
+	 * animation frame. Of several selections in a batch, only the last one 
+	 * is delivered.
+	 * <p>
+	 * Positions of queued events follow data changes of the adapter. If an 
+	 * item is gone, its event has the position {@link AdapterView#INVALID_POSITION},
+	 * but keeps its id. The view of a deferred settle event may be recycled 
+	 * already.
 	 * 
-	 * @param position of the new selection
-	 * @param rowId of the new selection
-	 * @param discard the old selected view. If true, the method will handle the
-	 * removing of the previous selected view.
+	 * @param defer true, for delivering callbacks after the animation frame.
 	 */
-	@Override
-	protected void onSelectionChange(int position, long id) {
-		// remove old view
-		if (!mSelectedViewDetached && mSelectedPosition != INVALID_POSITION) {
-			// start discard animation
-			mSelectedView.animate()
-					.setDuration(DISCARD_DURATION)
-					.scaleX(2)
-					.scaleY(2)
-					.alpha(0)
-					.setListener(new RemoveViewAfterAnimation(mSelectedView))
-					.start();
-		}
-
-		// add new view
-		if (position != INVALID_POSITION) {
-			mSelectedView = obtainView(position);
-			mSelectedViewDetached = false;	// reset flag
-
-			ObjectAnimator.ofPropertyValuesHolder(mSelectedView,
-					PropertyValuesHolder.ofFloat("scaleX", 0.5f, 1f),
-					PropertyValuesHolder.ofFloat("scaleY", 0.5f, 1f),
-					PropertyValuesHolder.ofFloat("alpha", 0f, 1f))
-			.setDuration(APPEARING_DURATION).start();
-		} else {
-			mSelectedView = null;
-		}
-
-		requestLayout();
-
-	}
-
-	private View obtainView(int position) {
-		View scrapView = mRecycleBin.getScrapView(position);
-
-		View child = mAdapter.getView(position, scrapView, this);
-
-		// Respect layout params that are already in the view. Otherwise make some up...
-        // noinspection unchecked
-		CardView.LayoutParams p = (CardView.LayoutParams) child.getLayoutParams();
-        if (p == null) {
-            p = new CardView.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
-                    ViewGroup.LayoutParams.FILL_PARENT, 0);
-        }
-        p.viewType = mAdapter.getItemViewType(position);
-		
-		
-		if (scrapView != null) {
-			if (scrapView == child) {
-				// adapter returned our view and we only need
-				// to attach and reset attributes.
-				attachViewToParent(child, 0, p);
-
-				child.setTranslationY(0);
-				child.setAlpha(1);
-				return child;
-			} else {
-				// adapter returned another view, so we recycle
-				// our prepared view again and continue handling
-				// the new view.
-				mRecycleBin.addScrapView(scrapView);
-			}
+	public void setDeferredCallbacks(boolean defer) {
+		mDeferCallbacks = defer;
+		if (!defer) {
+			dispatchEvents();
 		}
-
-		// add new view
-		addViewInLayout(child, 0, p);
-
-		// measure new view
-		int mChildWidthMeasureSpec = MeasureSpec.makeMeasureSpec(
-				getMeasuredWidth() - getPaddingLeft() - getPaddingRight(),
-				MeasureSpec.EXACTLY);
-		int mChildHeightMeasureSpec = MeasureSpec.makeMeasureSpec(
-				getMeasuredHeight() - getPaddingTop() - getPaddingBottom(),
-				MeasureSpec.EXACTLY);
-		measureChild(child, mChildWidthMeasureSpec, mChildHeightMeasureSpec);
-		
-		return child;
 	}
 	
-	@Override
-	public boolean onDown(MotionEvent e) {
-		return false;
+	public boolean isDeferredCallbacks() {
+		return mDeferCallbacks;
 	}
-
-	@Override
-	public void setLongClickable(boolean isLongpressEnabled) {
-		mGestureDetector.setIsLongpressEnabled(isLongpressEnabled);
+	
+	/**
+	 * Sets the number of positions following the selection, which are bound
+	 * and measured ahead of time while the view is idle. A settle promotes
+	 * such a prepared view instead of calling the adapter in the same frame.
+	 * 
+	 * @param count of positions to prepare. 0 disables the lookahead.
+	 */
+	public void setLookahead(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Can't have a lookahead < 0");
+		}
+		mLookahead = count;
+		trimLookahead();
+		scheduleLookahead(0);
 	}
 	
-	@Override
-	public boolean isLongClickable() {
-		return mGestureDetector.isLongpressEnabled();
+	public int getLookahead() {
+		return mLookahead;
 	}
 	
-	@Override
-	public void onLongPress(MotionEvent e) {
-		// todo selecting with blue frame
-		OnItemLongClickListener listener = getOnItemLongClickListener();
+	/**
+	 * Sets the amount of cards, which are visible at once. The cards 
+	 * following the selection peek out below it, each one smaller and 
+	 * further down. They are the views of the lookahead, so a settle moves 
+	 * each card up one slot without binding it again, and only the card 
+	 * entering the deepest slot is bound. The lookahead covers at least 
+	 * depth - 1 positions.
+	 * 
+	 * @param depth of the stack. 1 shows the selected card only.
+	 */
+	public void setStackDepth(int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("Can't have a stack depth < 1");
+		}
+		mStackDepth = depth;
+		trimLookahead();
+		scheduleLookahead(0);
+		invalidate();
+	}
+	
+	public int getStackDepth() {
+		return mStackDepth;
+	}
+	
+	/**
+	 * Sets a drawable, which is drawn for the slots below the bound cards of
+	 * the stack. It also stands in for bound cards, which are not prepared 
+	 * yet. The same drawable is drawn for each slot, so deep stacks cost no
+	 * views.
+	 * 
+	 * @param placeholder drawable of the deeper cards, or null.
+	 * @param count of the slots below the stack depth.
+	 */
+	public void setStackPlaceholder(Drawable placeholder, int count) {
+		mStackPlaceholder = placeholder;
+		mStackPlaceholderCount = placeholder != null ? count : 0;
+		invalidate();
+	}
+	
+	/**
+	 * Sets how far each card of the stack peeks out below the card above.
+	 * 
+	 * @param offset in pixels.
+	 */
+	public void setStackSlotOffset(int offset) {
+		mStackSlotOffset = offset;
+		invalidate();
+	}
+	
+	public int getStackSlotOffset() {
+		return mStackSlotOffset;
+	}
+	
+	/**
+	 * @return the amount of positions following the selection, which are
+	 * prepared ahead.
+	 */
+	private int getLookaheadWindow() {
+		return Math.max(mLookahead, mStackDepth - 1);
+	}
+	
+	/**
+	 * @return how many selected views were taken from the lookahead.
+	 */
+	public int getLookaheadHitCount() {
+		return mLookaheadHits;
+	}
+	
+	/**
+	 * @return how many selected views had to be bound in place, although
+	 * the lookahead was enabled.
+	 */
+	public int getLookaheadMissCount() {
+		return mLookaheadMisses;
+	}
+	
+	/**
+	 * Enables the predictive preparation. While the selected card is 
+	 * dragged, the view of the next position is bound, measured and laid 
+	 * out as soon as the drag progress reaches the threshold. The progress 
+	 * is the translation of the card relative to its height, extrapolated 
+	 * by the velocity of the finger. If the card settles back, the prepared 
+	 * view is kept for the next drag.
+	 * 
+	 * @param threshold of the drag progress between 0 and 1. 0 disables the
+	 * prediction.
+	 */
+	public void setPredictThreshold(float threshold) {
+		if (threshold < 0 || threshold > 1) {
+			throw new IllegalArgumentException(
+					"Can't have a predict threshold outside of [0, 1]");
+		}
+		mPredictThreshold = threshold;
+		if (threshold == 0) {
+			removeCallbacks(mPrepareNext);
+			trimLookahead();
+		}
+	}
+	
+	public float getPredictThreshold() {
+		return mPredictThreshold;
+	}
+	
+	/**
+	 * @return how often the next card was prepared during a drag.
+	 */
+	public int getPredictionCount() {
+		return mPredictions;
+	}
+	
+	/**
+	 * Enables the inflation of views on a worker thread. The adapter needs
+	 * to implement {@link ViewInflater}. Until the view of the selected 
+	 * position is inflated, an empty placeholder is shown, which is swapped
+	 * as soon as the inflation finished.
+	 * 
+	 * @param enabled true, for inflating views in the background.
+	 */
+	public void setAsyncInflation(boolean enabled) {
+		mAsyncInflation = enabled;
+	}
+	
+	public boolean isAsyncInflation() {
+		return mAsyncInflation;
+	}
+	
+	/**
+	 * Sets the executor, which runs the asynchronous inflations. By default
+	 * a single background thread is shared between all CardViews. The 
+	 * priority of the executor's threads is not changed.
+	 * 
+	 * @param executor for inflating views, or null for the default.
+	 */
+	public void setInflationExecutor(Executor executor) {
+		mInflationExecutor = executor;
+	}
+	
+	/**
+	 * Sets the maximum amount of recycled views of all view types together.
+	 * The capacity of a single view type adapts to its reuse, but never 
+	 * exceeds this size. A shared recycle pool changes for all its CardViews.
+	 * 
+	 * @param size of the recycle pool. Needs to be at least 1.
+	 */
+	public void setRecycleBinSize(int size) {
+		mRecyclePool.setMaxScrap(size);
+	}
+	
+	public int getRecycleBinSize() {
+		return mRecyclePool.getMaxScrap();
+	}
+	
+	/**
+	 * @return the amount of views currently kept in the recycle pool.
+	 */
+	public int getRecycledViewCount() {
+		return mRecyclePool.size();
+	}
+	
+	/**
+	 * Sets the amount of recycled views, which stay bound to their items. 
+	 * If an item with a stable id is selected again, e.g. by 
+	 * {@link #setSelection(int)} or after restoring the instance state, its
+	 * bound view is reused without calling 
+	 * {@link Adapter#getView(int, View, ViewGroup)}. Any data change of the
+	 * adapter unbinds the views. A shared recycle pool changes for all its 
+	 * CardViews.
+	 * 
+	 * @param size of the bound view cache. 0 disables it.
+	 */
+	public void setBoundViewCacheSize(int size) {
+		mRecyclePool.setMaxBound(size);
+	}
+	
+	public int getBoundViewCacheSize() {
+		return mRecyclePool.getMaxBound();
+	}
+	
+	/**
+	 * @return the amount of views this CardView retains without showing 
+	 * them: prepared lookahead views and the views of the recycle pool.
+	 */
+	public int getRetainedViewCount() {
+		return mLookaheadViews.size() + mRecyclePool.size() + mRecyclePool.getBoundCount();
+	}
+	
+	/**
+	 * Releases retained views and snapshot bitmaps according to the level
+	 * of {@link ComponentCallbacks2#onTrimMemory(int)}. The CardView 
+	 * receives these levels itself while it is attached to a window, so 
+	 * calling this is only necessary to trim more eagerly. Released views
+	 * are prepared again, as soon as the stack is visible.
+	 * 
+	 * @param level of the memory trim.
+	 */
+	public void trimMemory(int level) {
+		if (DEBUG) Log.v(TAG, "trim memory level: "+ level);
+		
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+			releaseHiddenViews();
+		} else {
+			// snapshot bitmaps are cheap to allocate again.
+			clearFreeSnapshots();
+		}
+		
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+			mRecyclePool.trimToSize(0);
+		} else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+			mRecyclePool.trimToSize(1);
+		} else {
+			// the app is visible, but memory is getting low.
+			mRecyclePool.trimToSize(mRecyclePool.getMaxScrap() / 2);
+		}
+	}
+	
+	/**
+	 * Releases the views and bitmaps of this CardView only, which are of 
+	 * no use while nobody sees the stack. The recycle pool is left alone.
+	 */
+	private void releaseHiddenViews() {
+		clearFreeSnapshots();
+		
+		// nobody sees the next cards soon.
+		removeCallbacks(mFillLookahead);
+		removeCallbacks(mPrepareNext);
+		removeCallbacks(mWarmUpNext);
+		clearLookahead();
+	}
+	
+	/**
+	 * @return how often a recycled view was reused for its bound item.
+	 */
+	public int getBoundViewHitCount() {
+		return mRecyclePool.getBoundHitCount();
+	}
+	
+	/**
+	 * @return how often a recycled view of the given type was reused.
+	 */
+	public int getRecycleHitCount(int viewType) {
+		return mRecyclePool.getHitCount(getViewTypeKey(viewType));
+	}
+	
+	/**
+	 * @return how often no recycled view of the given type was available.
+	 */
+	public int getRecycleMissCount(int viewType) {
+		return mRecyclePool.getMissCount(getViewTypeKey(viewType));
+	}
+	
+	/**
+	 * @return how many views of the given type were evicted from the recycle
+	 * pool.
+	 */
+	public int getRecycleEvictionCount(int viewType) {
+		return mRecyclePool.getEvictionCount(getViewTypeKey(viewType));
+	}
+	
+	/**
+	 * @return the pool key of the adapter's view type, or null if views of
+	 * this type are not recycled.
+	 */
+	private Object getViewTypeKey(int viewType) {
+		if (mViewTypeKeys == null || viewType < 0 || viewType >= mViewTypeKeys.length) {
+			return null;
+		}
+		return mViewTypeKeys[viewType];
+	}
+	
+	/**
+	 * Enables the render optimization. A card is promoted to a hardware layer
+	 * only while it is dragged or animated, so changing its alpha or scale
+	 * does not redraw its hierarchy.
+	 * 
+	 * @param enabled true, for optimizing the rendering.
+	 */
+	public void setRenderOptimization(boolean enabled) {
+		mRenderOptimization = enabled;
+		invalidate();
+	}
+	
+	public boolean isRenderOptimization() {
+		return mRenderOptimization;
+	}
+	
+	/**
+	 * @return the time in nanoseconds, which was spent to draw the cards of 
+	 * the last frame.
+	 */
+	public long getLastFrameDrawTime() {
+		return mFrameDrawTime;
+	}
+	
+	/**
+	 * @return the amount of cards drawn in the last frame.
+	 */
+	public int getLastFrameDrawnCards() {
+		return mFrameDrawnCards;
+	}
+	
+	/**
+	 * @return the area of all cards drawn in the last frame, relative to the
+	 * area of this view. A value of 2 means that each pixel was drawn twice 
+	 * on average.
+	 */
+	public float getLastFrameOverdraw() {
+		return mFrameOverdraw;
+	}
+	
+	/**
+	 * Enables the warm-up of prepared cards. While no card is animated, 
+	 * each view of the lookahead gets a hardware layer, which is built 
+	 * right away by {@link View#buildLayer()}. This records the display 
+	 * list of the card and renders it ahead of time, so the appearing 
+	 * animation draws the card from its layer. The layer is released after
+	 * the appearing animation. Requires hardware acceleration and a 
+	 * lookahead or the predictive preparation. Note that each warmed card 
+	 * holds a layer of its size until then.
+	 * 
+	 * @param enabled true, for rendering prepared cards ahead of time.
+	 */
+	public void setWarmUp(boolean enabled) {
+		mWarmUp = enabled;
+		scheduleWarmUp();
+	}
+	
+	public boolean isWarmUp() {
+		return mWarmUp;
+	}
+	
+	/**
+	 * @return how many prepared cards were drawn ahead of time.
+	 */
+	public int getWarmUpCount() {
+		return mWarmUps;
+	}
+	
+	/**
+	 * @return the average time in nanoseconds of the first draw of selected
+	 * cards, which were warmed up before.
+	 */
+	public long getWarmFirstDrawTime() {
+		return mWarmFirstDraws > 0 ? mWarmFirstDrawTime / mWarmFirstDraws : 0;
+	}
+	
+	/**
+	 * @return the average time in nanoseconds of the first draw of selected
+	 * cards, which were not warmed up.
+	 */
+	public long getColdFirstDrawTime() {
+		return mColdFirstDraws > 0 ? mColdFirstDrawTime / mColdFirstDraws : 0;
+	}
+	
+	/**
+	 * Enables the snapshot discard. An outgoing card is drawn once into a 
+	 * bitmap and its view goes straight back to the recycle pool. The 
+	 * discard or settle animation then moves the bitmap instead of the view.
+	 * Note that the view passed to an {@link OnItemSettleListener} may then 
+	 * already be recycled.
+	 * 
+	 * @param enabled true, for animating outgoing cards as snapshots.
+	 */
+	public void setSnapshotDiscard(boolean enabled) {
+		mSnapshotDiscard = enabled;
+	}
+	
+	public boolean isSnapshotDiscard() {
+		return mSnapshotDiscard;
+	}
+	
+	/**
+	 * Enables the spring settle. A released card keeps the velocity of the
+	 * finger and settles with a critically damped spring instead of a fixed
+	 * duration. A settle, which is interrupted by another swipe, is 
+	 * retargeted from its current position and velocity.
+	 * 
+	 * @param enabled true, for settling cards with a spring.
+	 */
+	public void setSpringSettle(boolean enabled) {
+		mSpringSettle = enabled;
+	}
+	
+	public boolean isSpringSettle() {
+		return mSpringSettle;
+	}
+	
+	/**
+	 * Limits the amount of cards, which are animated out at the same time. 
+	 * During fast swiping, a further discard finishes the oldest one 
+	 * immediately.
+	 * 
+	 * @param max amount of discarding cards. Needs to be at least 1.
+	 */
+	public void setMaxDiscardingCards(int max) {
+		if (max < 1) {
+			throw new IllegalArgumentException(
+					"Can't have less than 1 discarding card");
+		}
+		mMaxDiscardingCards = max;
+	}
+	
+	public int getMaxDiscardingCards() {
+		return mMaxDiscardingCards;
+	}
+	
+	/**
+	 * Sets the amount of positions following the selection, which are 
+	 * passed to the adapter's {@link Prefetcher}. At most this many 
+	 * prefetches are in flight.
+	 * 
+	 * @param window of prefetched positions. 0 disables the prefetch.
+	 */
+	public void setPrefetchWindow(int window) {
+		if (window < 0) {
+			throw new IllegalArgumentException("Can't have a prefetch window < 0");
+		}
+		cancelPrefetches();
+		mPrefetchWindow = window;
+		mPrefetchPositions = new int[window];
+		mPrefetchIds = new long[window];
+		updatePrefetch(mSelectedPosition, mSelectedRowId);
+	}
+	
+	public int getPrefetchWindow() {
+		return mPrefetchWindow;
+	}
+	
+	/**
+	 * @return how many prefetches were started.
+	 */
+	public int getPrefetchIssuedCount() {
+		return mPrefetchIssued;
+	}
+	
+	/**
+	 * @return how many prefetched items were selected afterwards.
+	 */
+	public int getPrefetchUsedCount() {
+		return mPrefetchUsed;
+	}
+	
+	/**
+	 * @return how many prefetches were cancelled without being used.
+	 */
+	public int getPrefetchWastedCount() {
+		return mPrefetchWasted;
+	}
+	
+	@Override
+	protected void onDataSetChanged() {
+		// prepared views may show outdated data. Their views
+		// go back to the recycle bin and are bound again later.
+		clearLookahead();
+		scheduleLookahead(0);
+		mDataGeneration++;
+		mRecyclePool.unbindAll(mAdapter);
+		
+		// the same applies to prefetched data. The window is 
+		// refilled after the selection is synchronized.
+		cancelPrefetches();
+		post(mUpdatePrefetch);
+		
+		// queued events look up the positions of their ids again.
+		for (int i = 0; i < mPendingEvents.size(); i++) {
+			CallbackEvent event = mPendingEvents.get(i);
+			event.position = findPositionForId(event.position, event.id);
+			if (event.positions != null) {
+				for (int j = 0; j < event.positions.length; j++) {
+					event.positions[j] = findPositionForId(event.positions[j], event.ids[j]);
+				}
+			}
+		}
+	}
+	
+	@Override
+	protected void onItemsShifted(int positionStart, int delta) {
+		// prepared views follow their items. Views of removed
+		// items are dropped by the next trim.
+		for (int i = 0; i < mLookaheadViews.size(); i++) {
+			offsetPosition(mLookaheadViews.get(i), positionStart, delta);
+		}
+		
+		for (int i = 0; i < mPendingEvents.size(); i++) {
+			CallbackEvent event = mPendingEvents.get(i);
+			event.position = shiftPosition(event.position, positionStart, delta);
+			if (event.positions != null) {
+				for (int j = 0; j < event.positions.length; j++) {
+					event.positions[j] = shiftPosition(event.positions[j], positionStart, delta);
+				}
+			}
+		}
+		
+		// prefetched items too, but removed ones are cancelled.
+		for (int i = mPrefetchCount - 1; i >= 0; i--) {
+			int position = mPrefetchPositions[i];
+			if (position >= positionStart) {
+				mPrefetchPositions[i] += delta;
+			} else if (position >= positionStart + delta) {
+				mPrefetchPositions[i] = INVALID_POSITION;
+				cancelPrefetch(i);
+			}
+		}
+		post(mUpdatePrefetch);
+
+		if (mSelectedView != null) {
+			offsetPosition(mSelectedView, positionStart, delta);
+		}
+		scheduleLookahead(LOOKAHEAD_DELAY);
+	}
+	
+	@Override
+	protected void onItemsMoved(int fromPosition, int toPosition) {
+		for (int i = 0; i < mLookaheadViews.size(); i++) {
+			CardView.LayoutParams p = (CardView.LayoutParams)
+					mLookaheadViews.get(i).getLayoutParams();
+			p.position = movePosition(p.position, fromPosition, toPosition);
+		}
+		
+		for (int i = 0; i < mPendingEvents.size(); i++) {
+			CallbackEvent event = mPendingEvents.get(i);
+			event.position = movePosition(event.position, fromPosition, toPosition);
+			if (event.positions != null) {
+				for (int j = 0; j < event.positions.length; j++) {
+					event.positions[j] = movePosition(event.positions[j], 
+							fromPosition, toPosition);
+				}
+			}
+		}
+		
+		for (int i = 0; i < mPrefetchCount; i++) {
+			mPrefetchPositions[i] = movePosition(mPrefetchPositions[i], 
+					fromPosition, toPosition);
+		}
+		post(mUpdatePrefetch);
+		
+		if (mSelectedView != null) {
+			CardView.LayoutParams p = (CardView.LayoutParams) mSelectedView.getLayoutParams();
+			p.position = movePosition(p.position, fromPosition, toPosition);
+		}
+		scheduleLookahead(LOOKAHEAD_DELAY);
+	}
+	
+	private static int shiftPosition(int position, int positionStart, int delta) {
+		if (position >= positionStart) {
+			return position + delta;
+		} else if (position >= positionStart + delta) {
+			return INVALID_POSITION;
+		}
+		return position;
+	}
+	
+	private void offsetPosition(View view, int positionStart, int delta) {
+		CardView.LayoutParams p = (CardView.LayoutParams) view.getLayoutParams();
+		if (p.position >= positionStart) {
+			p.position += delta;
+		} else if (p.position >= positionStart + delta) {
+			p.position = INVALID_POSITION;
+		}
+	}
+	
+	@Override
+	protected void onItemsChanged(int positionStart, int itemCount) {
+		mDataGeneration++;
+		mRecyclePool.unbindAll(mAdapter);
+		
+		int positionEnd = positionStart + itemCount;
+		boolean slotChanged = false;
+		for (int i = 0; i < mLookaheadViews.size(); i++) {
+			CardView.LayoutParams p = (CardView.LayoutParams)
+					mLookaheadViews.get(i).getLayoutParams();
+			if (p.position >= positionStart && p.position < positionEnd) {
+				slotChanged |= mStackDepth > 1;
+				p.position = INVALID_POSITION;
+			}
+		}
+		
+		for (int i = mPrefetchCount - 1; i >= 0; i--) {
+			int position = mPrefetchPositions[i];
+			if (position >= positionStart && position < positionEnd) {
+				cancelPrefetch(i);
+			}
+		}
+		post(mUpdatePrefetch);
+		
+		if (mSelectedPosition >= positionStart && mSelectedPosition < positionEnd) {
+			rebindSelectedView();
+		}
+		
+		if (slotChanged) {
+			// slot cards are detached and can't invalidate the stack 
+			// themselves. Their slots are bound again right away.
+			invalidate();
+			scheduleLookahead(0);
+		} else {
+			scheduleLookahead(LOOKAHEAD_DELAY);
+		}
+	}
+	
+	/**
+	 * Binds the selected view again to its item. If the adapter returns
+	 * another view, this view takes over the state of the selected view.
+	 */
+	private void rebindSelectedView() {
+		View view = mSelectedView;
+		if (view == null) {
+			return;
+		}
+		
+		CardView.LayoutParams lp = (CardView.LayoutParams) view.getLayoutParams();
+		if (lp.placeholder) {
+			// the view is bound as soon as it is inflated.
+			return;
+		}
+		
+		View child = mAdapter.getView(mSelectedPosition, view, this);
+		if (child != view) {
+			CardView.LayoutParams p = (CardView.LayoutParams) child.getLayoutParams();
+			if (p == null) {
+				p = new CardView.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
+						ViewGroup.LayoutParams.FILL_PARENT, 0);
+			}
+			p.viewType = mAdapter.getItemViewType(mSelectedPosition);
+			p.viewTypeKey = getViewTypeKey(p.viewType);
+			p.position = mSelectedPosition;
+			p.itemId = mSelectedRowId;
+			p.dataGeneration = mDataGeneration;
+			
+			child.setTranslationY(view.getTranslationY());
+			child.setAlpha(view.getAlpha());
+			child.setScaleX(view.getScaleX());
+			child.setScaleY(view.getScaleY());
+			
+			addViewInLayout(child, indexOfChild(view), p);
+			measureCard(child);
+			
+			getCardAnimation(view).cancel();
+			detachViewFromParent(view);
+			recycleDetachedView(view);
+			mSelectedView = child;
+		} else {
+			lp.dataGeneration = mDataGeneration;
+		}
+		
+		requestLayout();
+		invalidate();
+	}
+	
+
+	/**
+	 * intern method for setting the selection. The adapter need to be set.
+	 * 
+	 * @param position of the new selection
+	 * @param rowId of the new selection
+	 * @param discard the old selected view. If true, the method will handle the
+	 * removing of the previous selected view.
+	 */
+	@Override
+	protected void onSelectionChange(int position, long id) {
+		// remove old view
+		if (!mSelectedViewDetached && mSelectedPosition != INVALID_POSITION) {
+			// start discard animation
+			int duration = (int) (DISCARD_DURATION * mSelectionDurationScale);
+			CardAnimation animation = mSnapshotDiscard ? 
+					discardWithSnapshot(mSelectedView) : null;
+			if (animation == null) {
+				animation = getCardAnimation(mSelectedView);
+			}
+			animation.start(duration, sDefaultInterpolator, 
+					mSelectedView.getTranslationY(), 0, 2, true);
+		}
+
+		// add new view
+		if (position != INVALID_POSITION) {
+			mSelectedView = obtainView(position);
+			((CardView.LayoutParams) mSelectedView.getLayoutParams()).firstDraw = true;
+			mSelectedViewDetached = false;	// reset flag
+
+			if (mStackDepth > 1) {
+				// the card moves up from the first slot of the stack.
+				float scale = 1 - STACK_SLOT_SCALE;
+				mSelectedView.setScaleX(scale);
+				mSelectedView.setScaleY(scale);
+				mSelectedView.setTranslationY(getSlotTranslation(1, 
+						mSelectedView.getMeasuredHeight()));
+			} else {
+				mSelectedView.setScaleX(0.5f);
+				mSelectedView.setScaleY(0.5f);
+				mSelectedView.setAlpha(0);
+			}
+			getCardAnimation(mSelectedView).start(
+					(int) (APPEARING_DURATION * mSelectionDurationScale), 
+					sDefaultInterpolator, 0, 1, 1, false);
+		} else {
+			mSelectedView = null;
+		}
+
+		// the selection moved, so the lookahead window moves too. The stack
+		// updates mSelectedPosition only after this call.
+		trimLookahead(position);
+		inflateAhead();
+		scheduleLookahead(LOOKAHEAD_DELAY);
+		updatePrefetch(position, id);
+
+		requestLayout();
+
+	}
+
+	private View obtainView(int position) {
+		View prepared = takeLookaheadView(position);
+		if (prepared != null) {
+			attachViewToParent(prepared, 0, prepared.getLayoutParams());
+			return prepared;
+		}
+		
+		int viewType = mAdapter.getItemViewType(position);
+		Object key = getViewTypeKey(viewType);
+		long id = mAdapter.getItemId(position);
+		View scrapView = null;
+
+		// a view, which still shows this item, needs no binding.
+		View child = getBoundView(key, id);
+		if (child == null) {
+			scrapView = key != null ? mRecyclePool.get(key) : null;
+			
+			if (scrapView == null && canInflateAsync()) {
+				// don't inflate in this frame, but show a placeholder
+				// until the worker thread delivers the view.
+				requestInflation(viewType);
+				child = createPlaceholder(position);
+			} else {
+				child = mAdapter.getView(position, scrapView, this);
+			}
+		}
+
+		// Respect layout params that are already in the view. Otherwise make some up...
+        // noinspection unchecked
+		CardView.LayoutParams p = (CardView.LayoutParams) child.getLayoutParams();
+        if (p == null) {
+            p = new CardView.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
+                    ViewGroup.LayoutParams.FILL_PARENT, 0);
+        }
+        p.viewType = viewType;
+        p.viewTypeKey = key;
+        p.position = position;
+        p.itemId = id;
+        p.dataGeneration = mDataGeneration;
+        p.warmedUp = false;
+		
+		if (scrapView != null && scrapView != child) {
+			// adapter returned another view, so we recycle
+			// our pooled view again and continue handling
+			// the new view.
+			mRecyclePool.put(key, scrapView);
+		}
+		
+		// pooled views need a reset of their attributes.
+		child.setTranslationY(0);
+		child.setAlpha(1);
+
+		// add new view. Pooled views may come from another
+		// CardView, so they are measured again, too.
+		addViewInLayout(child, 0, p);
+
+		// measure new view
+		measureCard(child);
+		
+		return child;
+	}
+	
+	private void measureCard(View child) {
+		int mChildWidthMeasureSpec = MeasureSpec.makeMeasureSpec(
+				getMeasuredWidth() - getPaddingLeft() - getPaddingRight(),
+				MeasureSpec.EXACTLY);
+		int mChildHeightMeasureSpec = MeasureSpec.makeMeasureSpec(
+				getMeasuredHeight() - getPaddingTop() - getPaddingBottom(),
+				MeasureSpec.EXACTLY);
+		measureChild(child, mChildWidthMeasureSpec, mChildHeightMeasureSpec);
+	}
+	
+	/**
+	 * @return the prepared view of the given position, or null if the
+	 * position was not prepared or its row id changed meanwhile.
+	 */
+	private View takeLookaheadView(int position) {
+		if (getLookaheadWindow() == 0 && mLookaheadViews.isEmpty()) {
+			return null;
+		}
+		
+		long id = mAdapter.getItemId(position);
+		for (int i = 0; i < mLookaheadViews.size(); i++) {
+			View view = mLookaheadViews.get(i);
+			CardView.LayoutParams p = (CardView.LayoutParams) view.getLayoutParams();
+			if (p.position == position && p.itemId == id) {
+				mLookaheadViews.remove(i);
+				mLookaheadHits++;
+				return view;
+			}
+		}
+		mLookaheadMisses++;
+		return null;
+	}
+	
+	/**
+	 * @return true, if the position belongs to the lookahead window of the
+	 * selected position. The window wraps around like {@link #smoothMoveTo}.
+	 */
+	private boolean isInLookahead(int position, int selectedPosition) {
+		if (selectedPosition == INVALID_POSITION || position < 0 
+				|| position == selectedPosition) {
+			return false;
+		}
+		int distance = position - selectedPosition;
+		if (distance < 0) {
+			distance += mItemCount;
+		}
+		// a predicted card is kept, even if the drag didn't commit.
+		return distance <= getLookaheadWindow() 
+				|| (distance == 1 && mPredictThreshold > 0);
+	}
+	
+	private void trimLookahead() {
+		trimLookahead(mSelectedPosition);
+	}
+	
+	/**
+	 * Recycles prepared views, which are not part of the lookahead window 
+	 * of the selected position anymore or whose row id changed.
+	 */
+	private void trimLookahead(int selectedPosition) {
+		for (int i = mLookaheadViews.size() - 1; i >= 0; i--) {
+			View view = mLookaheadViews.get(i);
+			CardView.LayoutParams p = (CardView.LayoutParams) view.getLayoutParams();
+			if (!isInLookahead(p.position, selectedPosition) || p.position >= mItemCount
+					|| mAdapter.getItemId(p.position) != p.itemId) {
+				mLookaheadViews.remove(i);
+				recycleDetachedView(view);
+			}
+		}
+	}
+	
+	private void clearLookahead() {
+		for (int i = mLookaheadViews.size() - 1; i >= 0; i--) {
+			recycleDetachedView(mLookaheadViews.remove(i));
+		}
+	}
+	
+	/**
+	 * Removes a detached child and puts it into the recycle pool.
+	 */
+	private void recycleDetachedView(View view) {
+		removeDetachedView(view, false);
+		
+		CardView.LayoutParams lp = (CardView.LayoutParams) view.getLayoutParams();
+		if (lp == null) {
+			return;
+		}
+		
+		// the pool may be shared, so the view must not keep any state of 
+		// this CardView. Its animation belongs to this CardView and is 
+		// kept for the next view.
+		if (lp.animation != null) {
+			lp.animation.cancel();
+			if (lp.animation.mView == view) {
+				lp.animation.mView = null;
+				mFreeAnimations.add(lp.animation);
+			}
+			lp.animation = null;
+		}
+		demoteLayer(view);
+		lp.firstDraw = false;
+		lp.warmedUp = false;
+		
+		if (lp.placeholder || lp.viewTypeKey == null) {
+			return;
+		}
+		
+		if (mAdapter != null && mAdapter.hasStableIds() && lp.itemId != INVALID_ROW_ID
+				&& lp.dataGeneration == mDataGeneration) {
+			// the view still shows the current data of its item.
+			mRecyclePool.putBound(lp.viewTypeKey, view, mAdapter, lp.itemId);
+		} else {
+			mRecyclePool.put(lp.viewTypeKey, view);
+		}
+	}
+	
+	/**
+	 * @return a pooled view, which is still bound to the item, or null.
+	 */
+	private View getBoundView(Object key, long id) {
+		if (key == null || id == INVALID_ROW_ID || !mAdapter.hasStableIds()) {
+			return null;
+		}
+		return mRecyclePool.getBound(key, mAdapter, id);
+	}
+	
+	private void scheduleLookahead(int delay) {
+		removeCallbacks(mFillLookahead);
+		if (getLookaheadWindow() > 0) {
+			postDelayed(mFillLookahead, delay);
+		}
+	}
+	
+	/**
+	 * Prepares the next missing position of the lookahead window. Only one
+	 * view is bound per call, so the work is spread over several messages.
+	 */
+	private void fillLookahead() {
+		resolveDataChange();
+		if (mAdapter == null || mSelectedPosition == INVALID_POSITION
+				|| getWindowVisibility() != VISIBLE) {
+			return;
+		}
+		
+		if (mScrollState == SCROLL_STATE_DRAGGING) {
+			// don't compete with the user. We try again after the touch.
+			return;
+		}
+		
+		trimLookahead();
+		
+		int count = Math.min(getLookaheadWindow(), mItemCount - 1);
+		for (int i = 1; i <= count; i++) {
+			int position = (mSelectedPosition + i) % mItemCount;
+			if (!hasLookaheadView(position)) {
+				if (canInflateAsync()) {
+					int viewType = mAdapter.getItemViewType(position);
+					if (!mRecyclePool.has(getViewTypeKey(viewType))) {
+						// the finished inflation schedules the lookahead again.
+						requestInflation(viewType);
+						return;
+					}
+				}
+				prepareView(position);
+				scheduleLookahead(0);
+				if (mStackDepth > 1) {
+					// the view may replace the placeholder of its slot.
+					invalidate();
+				}
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Moves the prefetch window behind the given selection. Prefetches of
+	 * the selected item count as used, those outside the window as wasted.
+	 */
+	private void updatePrefetch(int position, long id) {
+		if (!(mAdapter instanceof Prefetcher)) {
+			return;
+		}
+		
+		int count = position == INVALID_POSITION ? 0 :
+				Math.min(mPrefetchWindow, mItemCount - 1);
+		
+		for (int i = mPrefetchCount - 1; i >= 0; i--) {
+			int prefetched = mPrefetchPositions[i];
+			if (mPrefetchIds[i] == id) {
+				mPrefetchUsed++;
+				removePrefetch(i);
+			} else if (prefetched < 0 || prefetched >= mItemCount
+					|| mAdapter.getItemId(prefetched) != mPrefetchIds[i]) {
+				cancelPrefetch(i);
+			} else {
+				int distance = prefetched - position;
+				if (distance < 0) {
+					distance += mItemCount;
+				}
+				if (distance < 1 || distance > count) {
+					cancelPrefetch(i);
+				}
+			}
+		}
+		
+		Prefetcher prefetcher = (Prefetcher) mAdapter;
+		for (int i = 1; i <= count; i++) {
+			int prefetch = (position + i) % mItemCount;
+			long prefetchId = mAdapter.getItemId(prefetch);
+			if (!isPrefetched(prefetchId)) {
+				mPrefetchPositions[mPrefetchCount] = prefetch;
+				mPrefetchIds[mPrefetchCount] = prefetchId;
+				mPrefetchCount++;
+				mPrefetchIssued++;
+				prefetcher.prefetch(prefetch, prefetchId);
+			}
+		}
+	}
+	
+	private boolean isPrefetched(long id) {
+		for (int i = 0; i < mPrefetchCount; i++) {
+			if (mPrefetchIds[i] == id) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private void cancelPrefetch(int index) {
+		mPrefetchWasted++;
+		((Prefetcher) mAdapter).cancelPrefetch(mPrefetchPositions[index], mPrefetchIds[index]);
+		removePrefetch(index);
+	}
+	
+	private void removePrefetch(int index) {
+		mPrefetchCount--;
+		System.arraycopy(mPrefetchPositions, index + 1, mPrefetchPositions, index, 
+				mPrefetchCount - index);
+		System.arraycopy(mPrefetchIds, index + 1, mPrefetchIds, index, 
+				mPrefetchCount - index);
+	}
+	
+	private void cancelPrefetches() {
+		removeCallbacks(mUpdatePrefetch);
+		for (int i = mPrefetchCount - 1; i >= 0; i--) {
+			cancelPrefetch(i);
+		}
+	}
+	
+	private boolean canInflateAsync() {
+		return mAsyncInflation && mAdapter instanceof ViewInflater;
+	}
+	
+	/**
+	 * Requests the background inflation of the view types, which are
+	 * needed for the next positions, but are missing in the recycle bin.
+	 */
+	private void inflateAhead() {
+		if (!canInflateAsync() || mItemCount == 0 
+				|| mNextSelectedPosition == INVALID_POSITION) {
+			return;
+		}
+		
+		int count = Math.max(1, Math.min(getLookaheadWindow(), mItemCount - 1));
+		for (int i = 1; i <= count; i++) {
+			int position = (mNextSelectedPosition + i) % mItemCount;
+			int viewType = mAdapter.getItemViewType(position);
+			if (!mRecyclePool.has(getViewTypeKey(viewType))) {
+				requestInflation(viewType);
+			}
+		}
+	}
+	
+	private void requestInflation(int viewType) {
+		if (mPendingInflations.get(viewType) > 0) {
+			return;
+		}
+		mPendingInflations.put(viewType, 1);
+		
+		Executor executor = mInflationExecutor;
+		if (executor == null) {
+			executor = getDefaultInflationExecutor();
+		}
+		executor.execute(new InflateTask(mAdapter, viewType));
+	}
+	
+	private static synchronized Executor getDefaultInflationExecutor() {
+		if (sInflationExecutor == null) {
+			sInflationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, "CardView inflater");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sInflationExecutor;
+	}
+	
+	/**
+	 * Called on the UI thread with a view inflated in the background.
+	 */
+	private void onInflationFinished(InflateTask task) {
+		mPendingInflations.delete(task.viewType);
+		
+		if (task.adapter != mAdapter || task.view == null) {
+			// the adapter changed meanwhile or the inflation failed.
+			return;
+		}
+		
+		View view = task.view;
+		CardView.LayoutParams p = (CardView.LayoutParams) view.getLayoutParams();
+		if (p == null) {
+			p = new CardView.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
+					ViewGroup.LayoutParams.FILL_PARENT, 0);
+			view.setLayoutParams(p);
+		}
+		p.viewType = task.viewType;
+		p.viewTypeKey = getViewTypeKey(task.viewType);
+		
+		if (p.viewTypeKey != null) {
+			mRecyclePool.put(p.viewTypeKey, view);
+		}
+		
+		if (mSelectedView != null) {
+			CardView.LayoutParams lp = (CardView.LayoutParams) mSelectedView.getLayoutParams();
+			if (lp.placeholder && lp.viewType == task.viewType) {
+				replacePlaceholder();
+			}
+		}
+		
+		scheduleLookahead(0);
+	}
+	
+	private View createPlaceholder(int position) {
+		View placeholder = new View(getContext());
+		CardView.LayoutParams p = new CardView.LayoutParams(
+				ViewGroup.LayoutParams.FILL_PARENT,
+				ViewGroup.LayoutParams.FILL_PARENT, 0);
+		p.placeholder = true;
+		p.position = position;
+		placeholder.setLayoutParams(p);
+		return placeholder;
+	}
+	
+	/**
+	 * Swaps the selected placeholder with the real view, which takes over
+	 * the placeholder's current state.
+	 */
+	private void replacePlaceholder() {
+		View placeholder = mSelectedView;
+		int position = ((CardView.LayoutParams) placeholder.getLayoutParams()).position;
+		
+		View child = obtainView(position);
+		child.setTranslationY(placeholder.getTranslationY());
+		child.setAlpha(placeholder.getAlpha());
+		child.setScaleX(placeholder.getScaleX());
+		child.setScaleY(placeholder.getScaleY());
+		
+		if (mScrollState != SCROLL_STATE_DRAGGING) {
+			getCardAnimation(child).start(APPEARING_DURATION, sDefaultInterpolator,
+					child.getTranslationY(), 1, 1, false);
+		}
+		
+		getCardAnimation(placeholder).cancel();
+		removeViewInLayout(placeholder);
+		mSelectedView = child;
+		
+		requestLayout();
+		invalidate();
+	}
+	
+	private boolean hasLookaheadView(int position) {
+		return findLookaheadView(position) != null;
+	}
+	
+	private View findLookaheadView(int position) {
+		for (int i = 0; i < mLookaheadViews.size(); i++) {
+			View view = mLookaheadViews.get(i);
+			CardView.LayoutParams p = (CardView.LayoutParams) view.getLayoutParams();
+			if (p.position == position) {
+				return view;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Binds, measures and lays out the view of the given position and keeps 
+	 * it detached in the lookahead.
+	 */
+	private void prepareView(int position) {
+		int viewType = mAdapter.getItemViewType(position);
+		Object key = getViewTypeKey(viewType);
+		long id = mAdapter.getItemId(position);
+		View scrapView = null;
+		
+		View child = getBoundView(key, id);
+		if (child == null) {
+			scrapView = key != null ? mRecyclePool.get(key) : null;
+			child = mAdapter.getView(position, scrapView, this);
+		}
+
+		CardView.LayoutParams p = (CardView.LayoutParams) child.getLayoutParams();
+		if (p == null) {
+			p = new CardView.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
+					ViewGroup.LayoutParams.FILL_PARENT, 0);
+		}
+		p.viewType = viewType;
+		p.viewTypeKey = key;
+		p.position = position;
+		p.itemId = id;
+		p.dataGeneration = mDataGeneration;
+		p.warmedUp = false;
+
+		if (scrapView != null && scrapView != child) {
+			mRecyclePool.put(key, scrapView);
+		}
+		
+		// the view needs a parent before we can detach it.
+		addViewInLayout(child, 0, p);
+		detachViewFromParent(child);
+		
+		child.setTranslationY(0);
+		child.setAlpha(1);
+
+		measureCard(child);
+
+		int parentWidth = getMeasuredWidth();
+		int parentHeight = getMeasuredHeight();
+		int childWidth = child.getMeasuredWidth();
+		int childHeight = child.getMeasuredHeight();
+		child.layout((parentWidth - childWidth) / 2,
+				(parentHeight - childHeight) / 2,
+				(parentWidth + childWidth) / 2,
+				(parentHeight + childHeight) / 2);
+		
+		mLookaheadViews.add(child);
+		scheduleWarmUp();
+		
+		if (DEBUG) Log.v(TAG, "prepared lookahead position: "+ position);
+	}
+	
+	/**
+	 * Checks whether the drag is likely to commit and prepares the next 
+	 * card once per drag.
+	 */
+	private void predictCommit(float translationY, int height) {
+		if (mPredictThreshold == 0 || mPredicted || height <= 0) {
+			return;
+		}
+		
+		float progress = Math.abs(translationY) / height;
+		if (progress < mPredictThreshold) {
+			// a fling towards the edge commits before the threshold.
+			float velocity = mVelocityEstimator.getVelocity();
+			if (velocity * translationY <= 0 
+					|| Math.abs(velocity) < mMinimumFlingVelocity) {
+				return;
+			}
+			progress = Math.abs(translationY + velocity * PREDICT_LEAD_TIME / 1000f) / height;
+			if (progress < mPredictThreshold) {
+				return;
+			}
+		}
+		
+		mPredicted = true;
+		// bind after the current frame, not within it.
+		post(mPrepareNext);
+	}
+	
+	private void prepareNext() {
+		resolveDataChange();
+		if (mAdapter == null || mSelectedPosition == INVALID_POSITION 
+				|| mItemCount < 2) {
+			return;
+		}
+		
+		int position = (mSelectedPosition + 1) % mItemCount;
+		if (hasLookaheadView(position)) {
+			return;
+		}
+		if (canInflateAsync()) {
+			int viewType = mAdapter.getItemViewType(position);
+			if (!mRecyclePool.has(getViewTypeKey(viewType))) {
+				requestInflation(viewType);
+				return;
+			}
+		}
+		if (DEBUG) Log.v(TAG, "predicted commit, prepare position: "+ position);
+		prepareView(position);
+		mPredictions++;
+	}
+	
+	@Override
+	public void setLongClickable(boolean isLongpressEnabled) {
+		mLongPressDisabled = !isLongpressEnabled;
+	}
+	
+	@Override
+	public boolean isLongClickable() {
+		return !mLongPressDisabled;
+	}
+	
+	/**
+	 * @return the time in milliseconds between the last touch event of a 
+	 * drag and the frame, which moved the card to its position.
+	 */
+	public long getLastDragLatency() {
+		return mDragLatency;
+	}
+	
+	private void performLongPress() {
+		// todo selecting with blue frame
+		OnItemLongClickListener listener = getOnItemLongClickListener();
 		if (mSelectedView != null && listener != null) {
 			listener.onItemLongClick(this, 
 					mSelectedView, 
@@ -310,60 +1994,159 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 		} 
 	}
 
-	@Override
-	public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-		cancelLongPress();
+	/**
+	 * Handles the touch events of both, {@link #onInterceptTouchEvent} and
+	 * {@link #onTouchEvent}. An event passing both is handled once.
+	 * 
+	 * @return true, while the card is dragged.
+	 */
+	private boolean handleTouchEvent(MotionEvent event) {
+		int action = event.getActionMasked();
+		if (event.getEventTime() == mLastTouchTime && action == mLastTouchAction) {
+			return mScrollState == SCROLL_STATE_DRAGGING;
+		}
+		mLastTouchTime = event.getEventTime();
+		mLastTouchAction = action;
+		
+		switch (action) {
+		case MotionEvent.ACTION_DOWN:
+			mDownX = event.getX();
+			mDownY = event.getY();
+			mAlwaysInTapRegion = true;
+			mLongPressed = false;
+			mVelocityEstimator.clear();
+			mVelocityEstimator.addMovement(event);
+			
+			if (mSelectedView != null 
+					&& Math.abs(mSelectedView.getTranslationY()) > mTouchSlop) {
+				// the card is settling. Catch it without waiting for the slop.
+				startDrag(mDownY);
+			} else if (!mLongPressDisabled) {
+				postDelayed(mLongPress, ViewConfiguration.getLongPressTimeout());
+			}
+			break;
+			
+		case MotionEvent.ACTION_MOVE:
+			mVelocityEstimator.addMovement(event);
+			float y = event.getY();
+			if (mAlwaysInTapRegion) {
+				float dx = event.getX() - mDownX;
+				float dy = y - mDownY;
+				if (dx * dx + dy * dy > mTouchSlop * mTouchSlop) {
+					mAlwaysInTapRegion = false;
+					removeCallbacks(mLongPress);
+				}
+			}
+			if (mScrollState != SCROLL_STATE_DRAGGING && mSelectedView != null
+					&& Math.abs(y - mDownY) > mTouchSlop) {
+				// start from the slop, so the card doesn't jump.
+				startDrag(y > mDownY ? mDownY + mTouchSlop : mDownY - mTouchSlop);
+			}
+			if (mScrollState == SCROLL_STATE_DRAGGING) {
+				// the frame loop moves the card with the latest position.
+				mDragY = y;
+				mDragEventTime = event.getEventTime();
+				mDragPending = true;
+			}
+			break;
+			
+		case MotionEvent.ACTION_UP:
+			mVelocityEstimator.addMovement(event);
+			removeCallbacks(mLongPress);
+			if (mScrollState == SCROLL_STATE_DRAGGING) {
+				mDragY = event.getY();
+				mDragEventTime = event.getEventTime();
+				applyDrag();
+				release(mVelocityEstimator.getVelocity());
+			} else if (!mLongPressed && mAlwaysInTapRegion) {
+				performTap();
+			}
+			scheduleLookahead(LOOKAHEAD_DELAY);
+			break;
+			
+		case MotionEvent.ACTION_CANCEL:
+			removeCallbacks(mLongPress);
+			if (mScrollState == SCROLL_STATE_DRAGGING) {
+				release(0);
+			}
+			scheduleLookahead(LOOKAHEAD_DELAY);
+			break;
+		}
+		return mScrollState == SCROLL_STATE_DRAGGING;
+	}
+	
+	private void startDrag(float y) {
+		removeCallbacks(mLongPress);
+		
+		// the finger takes over from a running animation.
+		CardAnimation animation = getCardAnimation(mSelectedView);
+		if (animation.mRunning) {
+			animation.stop();
+			mSelectedView.setScaleX(1);
+			mSelectedView.setScaleY(1);
+		}
+		
+		// the card moves until the settle finished.
+		promoteLayer(mSelectedView);
 		mScrollState = SCROLL_STATE_DRAGGING;
-
-		float progress = Math.abs(mSelectedView.getTranslationY())/ mSelectedView.getHeight();
-		float y = mSelectedView.getY() - distanceY;
-
-		mSelectedView.setY(y);
+		mPredicted = false;
+		mDragStartY = y;
+		mDragY = y;
+		mDragStartTranslation = mSelectedView.getTranslationY();
+		
+		if (getParent() != null) {
+			getParent().requestDisallowInterceptTouchEvent(true);
+		}
+		startFrameLoop();
+	}
+	
+	/**
+	 * Moves the dragged card to the latest touch position.
+	 */
+	private void applyDrag() {
+		mDragPending = false;
+		if (mSelectedView == null) {
+			return;
+		}
+		
+		float translationY = mDragStartTranslation + mDragY - mDragStartY;
+		float progress = Math.min(1, Math.abs(translationY) / mSelectedView.getHeight());
+		mSelectedView.setTranslationY(translationY);
 		mSelectedView.setAlpha(1 - progress);
 		
-		return true;
+		mDragLatency = AnimationUtils.currentAnimationTimeMillis() - mDragEventTime;
+		predictCommit(translationY, mSelectedView.getHeight());
 	}
-
-	@Override
-	public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-		float translationY = mSelectedView.getTranslationY();
-		if (velocityY > 0 && translationY > 0) {
-			smoothMoveTo(SETTLE_DOWN, velocityY);
-		} else if (velocityY < 0 && translationY < 0) {
-			smoothMoveTo(SETTLE_UP, velocityY);
+	
+	/**
+	 * Settles the dragged card according to the release velocity.
+	 */
+	private void release(float velocityY) {
+		if (Math.abs(velocityY) < mMinimumFlingVelocity) {
+			// a spring keeps even a slow release velocity.
+			smoothMoveTo(SETTLE_MID, mSpringSettle ? velocityY : 0);
 		} else {
-			smoothMoveTo(SETTLE_MID, velocityY);
+			velocityY = Math.max(-mMaximumFlingVelocity, 
+					Math.min(velocityY, mMaximumFlingVelocity));
+			float translationY = mSelectedView.getTranslationY();
+			if (velocityY > 0 && translationY > 0) {
+				smoothMoveTo(SETTLE_DOWN, velocityY);
+			} else if (velocityY < 0 && translationY < 0) {
+				smoothMoveTo(SETTLE_UP, velocityY);
+			} else {
+				smoothMoveTo(SETTLE_MID, velocityY);
+			}
 		}
-		return true;
+		mScrollState = SCROLL_STATE_IDLE;
 	}
 
 	private void smoothMoveTo(int target, float velocity) {
 		mScrollState = SCROLL_STATE_SETTLING;
-
-		int height = mSelectedView.getHeight();
-		int y = mSelectedView.getTop() + height * target;
-
-		final float pageDelta = (float) Math.abs(y - mSelectedView.getY()) / height;
-		int duration = (int) (pageDelta * SETTLE_INFLUENCE_DURATION);
-
-		velocity = Math.abs(velocity);
-		if (velocity > 0) {
-			duration += (duration / (velocity / mBaseLineFlingVelocity)) * mFlingVelocityInfluence;
+		if (mSpringSettle) {
+			startSettleAnimation(target, 0, velocity);
 		} else {
-			duration += 100;
+			startSettleAnimation(target, getSettleDuration(target, velocity), 0);
 		}
-		duration = Math.min(duration, SETTLE_MAX_DURATION);
-
-		mSelectedView.animate()
-				.setDuration(duration)
-				.y(y)
-				.alpha(target != SETTLE_MID ? 0 : 1)
-				.setInterpolator(sInterpolator)
-				.setListener( target == SETTLE_MID ? null : 
-					new RemoveViewAfterAnimation(mSelectedView))
-				.start();
-
-		
 		
 		if (target != SETTLE_MID) {
 			// set flag for handling the view detachment by ourself
@@ -392,7 +2175,10 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 			
 			
 			// notify settle listener
-			if (mSettleListener != null) {
+			if (mDeferCallbacks) {
+				queueEvent(target == SETTLE_UP ? EVENT_UP : EVENT_DOWN, 
+						view, position, id);
+			} else if (mSettleListener != null) {
 				if(target==SETTLE_UP) {
 					mSettleListener.onItemUp(this, view, position, id);
 				} else {
@@ -404,12 +2190,113 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 	}
 	
 
-	@Override
-	public void onShowPress(MotionEvent e) {}
+	/**
+	 * @return the duration of a settle without spring.
+	 */
+	private int getSettleDuration(int target, float velocity) {
+		int height = mSelectedView.getHeight();
+		int y = mSelectedView.getTop() + height * target;
 
-	@Override
-	public boolean onSingleTapUp(MotionEvent e) {
-		if (DEBUG) Log.v(TAG, "onSingleTapUp");
+		final float pageDelta = (float) Math.abs(y - mSelectedView.getY()) / height;
+		int duration = (int) (pageDelta * SETTLE_INFLUENCE_DURATION);
+
+		velocity = Math.abs(velocity);
+		if (velocity > 0) {
+			duration += (duration / (velocity / mBaseLineFlingVelocity)) * mFlingVelocityInfluence;
+		} else {
+			duration += 100;
+		}
+		return Math.min(duration, SETTLE_MAX_DURATION);
+	}
+	
+	/**
+	 * Animates the selected card to the target. With the spring settle,
+	 * the card starts at the given velocity and the duration is ignored.
+	 */
+	private void startSettleAnimation(int target, int duration, float velocity) {
+		int height = mSelectedView.getHeight();
+		float scale = mSelectedView.getScaleX();
+		CardAnimation animation = null;
+		if (target != SETTLE_MID && mSnapshotDiscard) {
+			animation = discardWithSnapshot(mSelectedView);
+		}
+		if (animation == null) {
+			animation = getCardAnimation(mSelectedView);
+		}
+		
+		if (mSpringSettle) {
+			animation.spring(velocity, height * target, 
+					target != SETTLE_MID ? 0 : 1, scale, target != SETTLE_MID);
+		} else {
+			animation.start(duration, sInterpolator, height * target, 
+					target != SETTLE_MID ? 0 : 1, scale, target != SETTLE_MID);
+		}
+	}
+	
+	/**
+	 * Moves the selected card and the following ones up at once. Only the 
+	 * selected card is animated, and the selection advances once behind the
+	 * swiped cards. The {@link OnItemsSettleListener} receives all swiped 
+	 * items in one callback. At least one card stays in the stack, unless 
+	 * the stack has only one card.
+	 * 
+	 * @param count of cards to swipe.
+	 */
+	public void swipeUp(int count) {
+		swipe(SETTLE_UP, count);
+	}
+	
+	/**
+	 * Moves the selected card and the following ones down at once.
+	 * 
+	 * @see #swipeUp(int)
+	 * @param count of cards to swipe.
+	 */
+	public void swipeDown(int count) {
+		swipe(SETTLE_DOWN, count);
+	}
+	
+	private void swipe(int target, int count) {
+		resolveDataChange();
+		if (mAdapter == null || mSelectedView == null || count < 1
+				|| mScrollState == SCROLL_STATE_DRAGGING) {
+			return;
+		}
+		count = Math.min(count, Math.max(mItemCount - 1, 1));
+		
+		int[] positions = new int[count];
+		long[] ids = new long[count];
+		for (int i = 0; i < count; i++) {
+			positions[i] = (mSelectedPosition + i) % mItemCount;
+			ids[i] = mAdapter.getItemId(positions[i]);
+		}
+		if (DEBUG) Log.v(TAG, "swipe "+ count +" cards from position "+ mSelectedPosition);
+		
+		// a running settle continues with its velocity.
+		startSettleAnimation(target, BATCH_SWIPE_DURATION, 
+				getCardAnimation(mSelectedView).getVelocity());
+		mSelectedViewDetached = true;
+		
+		mNextSelectedPosition = (mSelectedPosition + count) % mItemCount;
+		mNextSelectedRowId = mAdapter.getItemId(mNextSelectedPosition);
+		checkSelectionChanged();
+		
+		if (mDeferCallbacks) {
+			CallbackEvent event = queueEvent(target == SETTLE_UP ? 
+					EVENT_ITEMS_UP : EVENT_ITEMS_DOWN, null, INVALID_POSITION, INVALID_ROW_ID);
+			event.positions = positions;
+			event.ids = ids;
+		} else if (mItemsSettleListener != null) {
+			if (target == SETTLE_UP) {
+				mItemsSettleListener.onItemsUp(this, positions, ids);
+			} else {
+				mItemsSettleListener.onItemsDown(this, positions, ids);
+			}
+		}
+	}
+
+	private void performTap() {
+		if (DEBUG) Log.v(TAG, "performTap");
 
 		OnItemClickListener listener = getOnItemClickListener();
 		if (mSelectedView != null && listener != null) {
@@ -418,37 +2305,31 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 					mSelectedPosition,
 					mSelectedRowId);
 		}
-		return false;
 	}
 
 	@Override
 	public boolean onInterceptTouchEvent(MotionEvent event) {
+		resolveDataChange();
 		if (mAdapter == null | mItemCount == 0)
 			return false;
-		return mGestureDetector.onTouchEvent(event);
+		return handleTouchEvent(event);
 	}
 
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
+		resolveDataChange();
 		if (mAdapter == null | mItemCount == 0)
 			return false;
 
-		mGestureDetector.onTouchEvent(event);
-
-		switch (event.getAction()) {
-		case MotionEvent.ACTION_UP:
-		case MotionEvent.ACTION_CANCEL:
-			if (mScrollState != SCROLL_STATE_SETTLING) {
-				smoothMoveTo(SETTLE_MID, 0);
-			}
-			mScrollState = SCROLL_STATE_IDLE;
-			break;
-		}
+		handleTouchEvent(event);
 		return true;
 	}
 
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		// a coalesced data change may still replace the selected card.
+		resolveDataChange();
+		
 		setMeasuredDimension(getDefaultSize(0, widthMeasureSpec),
 				getDefaultSize(0, heightMeasureSpec));
 
@@ -463,29 +2344,331 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 			measureChild(getChildAt(i), mChildWidthMeasureSpec, mChildHeightMeasureSpec);
 		}
 	}
-
+
+	@Override
+	protected void onLayout(boolean c, int l, int t, int r, int b) {
+		// center children in parent
+		int parentWidth = getMeasuredWidth();
+		int parentHeight = getMeasuredHeight();
+		int childCount = getChildCount();
+
+		for (int i = 0; i < childCount; i++) {
+			View child = getChildAt(i);
+
+			int childWidth = child.getMeasuredWidth();
+			int childHeight = child.getMeasuredHeight();
+			child.layout((parentWidth - childWidth) / 2,
+					(parentHeight - childHeight) / 2,
+					(parentWidth + childWidth) / 2,
+					(parentHeight + childHeight) / 2);
+		}
+	}
+
+	
+	@Override
+	protected void dispatchDraw(Canvas canvas) {
+		long start = System.nanoTime();
+		
+		mFrameDrawnCards = 0;
+		mFrameDrawnArea = 0;
+		
+		if (mStackDepth > 1 || mStackPlaceholderCount > 0) {
+			drawStack(canvas);
+		}
+		
+		super.dispatchDraw(canvas);
+		
+		// outgoing cards are on top.
+		for (int i = 0; i < mSnapshots.size(); i++) {
+			drawSnapshot(canvas, mSnapshots.get(i));
+		}
+		
+		int area = getWidth() * getHeight();
+		mFrameOverdraw = area > 0 ? (float) mFrameDrawnArea / area : 0;
+		mFrameDrawTime = System.nanoTime() - start;
+	}
+	
+	private void scheduleWarmUp() {
+		removeCallbacks(mWarmUpNext);
+		if (mWarmUp) {
+			post(mWarmUpNext);
+		}
+	}
+	
+	/**
+	 * Builds the layer of the nearest prepared card, which was not warmed
+	 * up yet. Only one card is warmed up per message. The layer is built 
+	 * outside of the draw pass, so no view is changed while drawing.
+	 */
+	private void warmUpLookahead() {
+		if (!mRunningAnimations.isEmpty() || !isHardwareAccelerated()
+				|| mLookaheadViews.isEmpty() || mSelectedPosition == INVALID_POSITION) {
+			// the end of the animations schedules the warm-up again.
+			return;
+		}
+		
+		View view = null;
+		int count = Math.min(Math.max(getLookaheadWindow(), 1), mItemCount - 1);
+		for (int i = 1; i <= count && view == null; i++) {
+			View candidate = findLookaheadView((mSelectedPosition + i) % mItemCount);
+			if (candidate != null && !((CardView.LayoutParams) 
+					candidate.getLayoutParams()).warmedUp) {
+				view = candidate;
+			}
+		}
+		if (view == null || view.getWindowToken() == null) {
+			return;
+		}
+		
+		// the layer is kept until the appearing animation of the card ends.
+		CardView.LayoutParams lp = (CardView.LayoutParams) view.getLayoutParams();
+		if (!lp.layerPromoted && view.getLayerType() == LAYER_TYPE_NONE) {
+			lp.layerPromoted = true;
+			view.setLayerType(LAYER_TYPE_HARDWARE, null);
+		}
+		view.buildLayer();
+		
+		lp.warmedUp = true;
+		mWarmUps++;
+		if (DEBUG) Log.v(TAG, "warmed up position: "+ lp.position);
+		
+		// continue with the next card in the following message.
+		scheduleWarmUp();
+	}
+	
+	/**
+	 * Draws the slots below the selected card from the deepest one up. 
+	 * Bound slots draw their detached lookahead views directly.
+	 */
+	private void drawStack(Canvas canvas) {
+		View top = mSelectedView;
+		if (top == null || mItemCount < 2) {
+			return;
+		}
+		
+		int left = top.getLeft();
+		int topEdge = top.getTop();
+		int width = top.getWidth();
+		int height = top.getHeight();
+		
+		int slots = Math.min(mStackDepth - 1 + mStackPlaceholderCount, mItemCount - 1);
+		for (int slot = slots; slot >= 1; slot--) {
+			View view = null;
+			if (slot < mStackDepth) {
+				view = findLookaheadView((mSelectedPosition + slot) % mItemCount);
+			}
+			if (view == null && mStackPlaceholder == null) {
+				continue;
+			}
+			
+			float scale = 1 - slot * STACK_SLOT_SCALE;
+			int saveCount = canvas.save();
+			canvas.translate(left, topEdge + getSlotTranslation(slot, height));
+			canvas.scale(scale, scale, width / 2f, height / 2f);
+			if (view != null) {
+				view.draw(canvas);
+				mFrameDrawnCards++;
+			} else {
+				mStackPlaceholder.setBounds(0, 0, width, height);
+				mStackPlaceholder.draw(canvas);
+			}
+			canvas.restoreToCount(saveCount);
+		}
+	}
+	
+	/**
+	 * @return the vertical translation of a slot, which lets the scaled card 
+	 * peek out by the slot offset below the card above.
+	 */
+	private float getSlotTranslation(int slot, int height) {
+		return slot * (mStackSlotOffset + height * STACK_SLOT_SCALE / 2);
+	}
+	
+	@Override
+	protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+		mFrameDrawnCards++;
+		mFrameDrawnArea += (long) (child.getWidth() * child.getScaleX()) 
+				* (long) (child.getHeight() * child.getScaleY());
+		
+		CardView.LayoutParams lp = (CardView.LayoutParams) child.getLayoutParams();
+		if (!lp.firstDraw) {
+			return super.drawChild(canvas, child, drawingTime);
+		}
+		
+		lp.firstDraw = false;
+		long start = System.nanoTime();
+		boolean more = super.drawChild(canvas, child, drawingTime);
+		long time = System.nanoTime() - start;
+		if (lp.warmedUp) {
+			mWarmFirstDraws++;
+			mWarmFirstDrawTime += time;
+		} else {
+			mColdFirstDraws++;
+			mColdFirstDrawTime += time;
+		}
+		return more;
+	}
+	
+	/**
+	 * Draws the view into a bitmap and recycles the view. The caller 
+	 * animates the bitmap instead.
+	 * 
+	 * @return the animation of the snapshot, or null if the view can't be 
+	 * drawn.
+	 */
+	private CardAnimation discardWithSnapshot(View view) {
+		int width = view.getWidth();
+		int height = view.getHeight();
+		if (width <= 0 || height <= 0) {
+			return null;
+		}
+		
+		Snapshot snapshot = obtainSnapshot(width, height);
+		snapshot.bitmap.eraseColor(0);
+		mSnapshotCanvas.setBitmap(snapshot.bitmap);
+		view.draw(mSnapshotCanvas);
+		mSnapshotCanvas.setBitmap(null);
+		
+		snapshot.left = view.getLeft();
+		snapshot.top = view.getTop();
+		snapshot.translationY = view.getTranslationY();
+		snapshot.alpha = view.getAlpha();
+		snapshot.scale = view.getScaleX();
+		mSnapshots.add(snapshot);
+		
+		// the view is free for reuse right now.
+		getCardAnimation(view).cancel();
+		detachViewFromParent(view);
+		recycleDetachedView(view);
+		
+		invalidate();
+		return snapshot.animation;
+	}
+	
+	/**
+	 * @return a free snapshot, preferably with a bitmap of the given size.
+	 */
+	private Snapshot obtainSnapshot(int width, int height) {
+		Snapshot snapshot = null;
+		for (int i = mFreeSnapshots.size() - 1; i >= 0; i--) {
+			Bitmap bitmap = mFreeSnapshots.get(i).bitmap;
+			if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+				snapshot = mFreeSnapshots.remove(i);
+				break;
+			}
+		}
+		
+		if (snapshot == null) {
+			if (mFreeSnapshots.isEmpty()) {
+				snapshot = new Snapshot();
+			} else {
+				snapshot = mFreeSnapshots.remove(mFreeSnapshots.size() - 1);
+				snapshot.bitmap.recycle();
+			}
+			snapshot.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		}
+		return snapshot;
+	}
+	
+	private void releaseSnapshot(Snapshot snapshot) {
+		mSnapshots.remove(snapshot);
+		
+		// keep at most one bitmap per discarding card.
+		if (mFreeSnapshots.size() < mMaxDiscardingCards) {
+			mFreeSnapshots.add(snapshot);
+		} else {
+			snapshot.bitmap.recycle();
+			snapshot.bitmap = null;
+		}
+		invalidate();
+	}
+	
+	private void clearFreeSnapshots() {
+		for (int i = mFreeSnapshots.size() - 1; i >= 0; i--) {
+			mFreeSnapshots.remove(i).bitmap.recycle();
+		}
+	}
+	
+	private void drawSnapshot(Canvas canvas, Snapshot snapshot) {
+		Bitmap bitmap = snapshot.bitmap;
+		int saveCount = canvas.save();
+		canvas.translate(snapshot.left, snapshot.top + snapshot.translationY);
+		canvas.scale(snapshot.scale, snapshot.scale, 
+				bitmap.getWidth() / 2f, bitmap.getHeight() / 2f);
+		mSnapshotPaint.setAlpha((int) (snapshot.alpha * 255));
+		canvas.drawBitmap(bitmap, 0, 0, mSnapshotPaint);
+		canvas.restoreToCount(saveCount);
+		
+		mFrameDrawnCards++;
+		mFrameDrawnArea += (long) (bitmap.getWidth() * snapshot.scale) 
+				* (long) (bitmap.getHeight() * snapshot.scale);
+	}
+	
+	/**
+	 * Draws the card from a hardware layer, while it moves.
+	 */
+	private void promoteLayer(View view) {
+		if (!mRenderOptimization || view == null) {
+			return;
+		}
+		CardView.LayoutParams lp = (CardView.LayoutParams) view.getLayoutParams();
+		if (!lp.layerPromoted && view.getLayerType() == LAYER_TYPE_NONE) {
+			lp.layerPromoted = true;
+			view.setLayerType(LAYER_TYPE_HARDWARE, null);
+		}
+	}
+	
+	/**
+	 * Releases the hardware layer of a card, which stopped moving.
+	 */
+	private void demoteLayer(View view) {
+		CardView.LayoutParams lp = (CardView.LayoutParams) view.getLayoutParams();
+		if (lp.layerPromoted) {
+			lp.layerPromoted = false;
+			view.setLayerType(LAYER_TYPE_NONE, null);
+		}
+	}
+	
 	@Override
-	protected void onLayout(boolean c, int l, int t, int r, int b) {
-		// center children in parent
-		int parentWidth = getMeasuredWidth();
-		int parentHeight = getMeasuredHeight();
-		int childCount = getChildCount();
-
-		for (int i = 0; i < childCount; i++) {
-			View child = getChildAt(i);
-
-			int childWidth = child.getMeasuredWidth();
-			int childHeight = child.getMeasuredHeight();
-			child.layout((parentWidth - childWidth) / 2,
-					(parentHeight - childHeight) / 2,
-					(parentWidth + childWidth) / 2,
-					(parentHeight + childHeight) / 2);
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		getContext().getApplicationContext().registerComponentCallbacks(mTrimCallbacks);
+		
+		// views released while detached are prepared again.
+		scheduleLookahead(LOOKAHEAD_DELAY);
+	}
+	
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		getContext().getApplicationContext().unregisterComponentCallbacks(mTrimCallbacks);
+		
+		// nobody sees the animations anymore.
+		finishAnimations();
+		
+		// a shared pool keeps its views for the other CardViews.
+		if (mOwnsRecyclePool) {
+			trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+		} else {
+			releaseHiddenViews();
+		}
+	}
+	
+	@Override
+	protected void onWindowVisibilityChanged(int visibility) {
+		super.onWindowVisibilityChanged(visibility);
+		if (visibility == VISIBLE) {
+			scheduleLookahead(LOOKAHEAD_DELAY);
+		} else if (mOwnsRecyclePool) {
+			trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+		} else {
+			releaseHiddenViews();
 		}
 	}
-
 	
 	@Override
 	public View getSelectedView() {
+		resolveDataChange();
 		return mSelectedView;
 	}
 
@@ -507,141 +2690,595 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 	
 
 	/**
-	 * This AnimatorListenerAdapter detaches the view after the animation end
-	 * and recylces it.
+	 * @return the reusable animation of the card, which is kept in its 
+	 * layout params. Animations of recycled views are reused, so no 
+	 * animation is allocated, once every view had one.
 	 */
-	private class RemoveViewAfterAnimation extends AnimatorListenerAdapter {
-		private final View view;
-
-		public RemoveViewAfterAnimation(View view) {
-			this.view = view;
-		}
-
-		@Override
-		public void onAnimationEnd(Animator animation) {
-			// remove view from screen
-			if (mRecycleBin.addScrapView(view)) {
-				detachViewFromParent(view);
+	private CardAnimation getCardAnimation(View view) {
+		CardView.LayoutParams lp = (CardView.LayoutParams) view.getLayoutParams();
+		if (lp.animation == null || lp.animation.mView != view) {
+			if (mFreeAnimations.isEmpty()) {
+				lp.animation = new CardAnimation(view);
 			} else {
-				// recylce bin is full, so we discard
-				// this view.
-				removeViewInLayout(view);
+				lp.animation = mFreeAnimations.remove(mFreeAnimations.size() - 1);
+				lp.animation.mView = view;
 			}
 		}
+		return lp.animation;
 	}
-
+	
 	/**
-	 * The RecycleBin facilitates reuse of views across layouts.
+	 * Animates the translation, alpha and scale of a card. Each card keeps 
+	 * one instance, which is restarted for every appearing, settle and
+	 * discard, so the animations don't allocate. All running animations are
+	 * stepped by {@link CardView#stepAnimations()}. Optionally the view is
+	 * detached and recycled after the animation end.
 	 */
-	private class RecycleBin {
-		private ArrayList<View>[] mScrapViews;
-		private int mViewTypeCount;
-		private ArrayList<View> mCurrentScrap;
-
-		public void setViewTypeCount(int viewTypeCount) {
-			if (viewTypeCount < 1) {
-				throw new IllegalArgumentException(
-						"Can't have a viewTypeCount < 1");
+	private class CardAnimation {
+		private View mView;
+		private final Snapshot mSnapshot;
+		
+		private long mStartTime;
+		private long mDuration;
+		private TimeInterpolator mInterpolator;
+		private float mFromY, mToY;
+		private float mFromAlpha, mToAlpha;
+		private float mFromScale, mToScale;
+		private boolean mRemoveOnEnd;
+		private boolean mRunning;
+		
+		/**
+		 * Spring state: offset from the target and velocity at the start 
+		 * time, and the velocity of the last step.
+		 */
+		private boolean mSpring;
+		private float mStartOffset;
+		private float mStartVelocity;
+		private float mVelocity;
+
+		public CardAnimation(View view) {
+			mView = view;
+			mSnapshot = null;
+		}
+		
+		public CardAnimation(Snapshot snapshot) {
+			mView = null;
+			mSnapshot = snapshot;
+		}
+		
+		/**
+		 * Animates the card from its current state to the given one.
+		 */
+		public void start(long duration, TimeInterpolator interpolator,
+				float translationY, float alpha, float scale, boolean removeOnEnd) {
+			mDuration = duration;
+			mInterpolator = interpolator;
+			mSpring = false;
+			run(translationY, alpha, scale, removeOnEnd);
+		}
+		
+		/**
+		 * Moves the card with a critically damped spring from its current
+		 * state to the given one. A running animation is retargeted without
+		 * a jump, if the velocity of {@link #getVelocity()} is passed.
+		 * 
+		 * @param velocity of the translation at the start in pixels per 
+		 * second.
+		 */
+		public void spring(float velocity, float translationY, float alpha, 
+				float scale, boolean removeOnEnd) {
+			mStartVelocity = velocity;
+			mVelocity = velocity;
+			mSpring = true;
+			run(translationY, alpha, scale, removeOnEnd);
+			mStartOffset = mFromY - mToY;
+		}
+		
+		private void run(float translationY, float alpha, float scale, 
+				boolean removeOnEnd) {
+			// a new animation replaces a running one, including its removal.
+			// The card keeps its layer, because it continues to move.
+			stop();
+			
+			if (mView != null) {
+				mFromY = mView.getTranslationY();
+				mFromAlpha = mView.getAlpha();
+				mFromScale = mView.getScaleX();
+			} else {
+				mFromY = mSnapshot.translationY;
+				mFromAlpha = mSnapshot.alpha;
+				mFromScale = mSnapshot.scale;
 			}
-			// noinspection unchecked
-			@SuppressWarnings("unchecked")
-			ArrayList<View>[] scrapViews = new ArrayList[viewTypeCount];
-			for (int i = 0; i < viewTypeCount; i++) {
-				scrapViews[i] = new ArrayList<View>();
+			mToY = translationY;
+			mToAlpha = alpha;
+			mToScale = scale;
+			mRemoveOnEnd = removeOnEnd;
+			mStartTime = AnimationUtils.currentAnimationTimeMillis();
+			
+			if (removeOnEnd) {
+				limitDiscardingCards();
+			}
+			
+			if (mView != null) {
+				promoteLayer(mView);
+			}
+			
+			mRunning = true;
+			mRunningAnimations.add(this);
+			startFrameLoop();
+		}
+		
+		/**
+		 * Stops the animation at its current state, without removing the view.
+		 */
+		public void cancel() {
+			stop();
+			if (mView != null) {
+				demoteLayer(mView);
 			}
-			mViewTypeCount = viewTypeCount;
-			mCurrentScrap = scrapViews[0];
-			mScrapViews = scrapViews;
 		}
-
-		public void clear() {
-			if (mViewTypeCount == 1) {
-				final ArrayList<View> scrap = mCurrentScrap;
-				final int scrapCount = scrap.size();
-				for (int i = 0; i < scrapCount; i++) {
-					removeDetachedView(scrap.remove(scrapCount - 1 - i), false);
-				}
+		
+		private void stop() {
+			mRemoveOnEnd = false;
+			if (mRunning) {
+				mRunning = false;
+				mRunningAnimations.remove(this);
+			}
+		}
+		
+		public boolean isRemoving() {
+			return mRunning && mRemoveOnEnd;
+		}
+		
+		/**
+		 * @return the velocity of a running spring in pixels per second, 
+		 * otherwise 0.
+		 */
+		public float getVelocity() {
+			return mRunning && mSpring ? mVelocity : 0;
+		}
+		
+		/**
+		 * Applies the state of the given frame time.
+		 * 
+		 * @return true, if the animation reached its end.
+		 */
+		public boolean step(long now) {
+			if (mSpring) {
+				return stepSpring(now);
+			}
+			
+			float t = mDuration > 0 ? (float) (now - mStartTime) / mDuration : 1;
+			if (t >= 1) {
+				t = 1;
+			} else if (t < 0) {
+				t = 0;
+			}
+			
+			float fraction = mInterpolator.getInterpolation(t);
+			apply(mFromY + (mToY - mFromY) * fraction, fraction);
+			return t == 1;
+		}
+		
+		/**
+		 * Evaluates the spring at the frame time. The critically damped 
+		 * spring has a closed solution, so the result doesn't depend on
+		 * the frame rate.
+		 */
+		private boolean stepSpring(long now) {
+			float t = Math.max(0, (now - mStartTime) / 1000f);
+			float decay = (float) Math.exp(-SPRING_FREQUENCY * t);
+			float b = mStartVelocity + SPRING_FREQUENCY * mStartOffset;
+			float offset = (mStartOffset + b * t) * decay;
+			mVelocity = (mStartVelocity - SPRING_FREQUENCY * b * t) * decay;
+			
+			float fraction;
+			if (mFromY != mToY) {
+				// alpha and scale follow the way, the card has moved.
+				fraction = 1 - offset / mStartOffset;
+				fraction = Math.max(0, Math.min(fraction, 1));
 			} else {
-				final int typeCount = mViewTypeCount;
-				for (int i = 0; i < typeCount; i++) {
-					final ArrayList<View> scrap = mScrapViews[i];
-					final int scrapCount = scrap.size();
-					for (int j = 0; j < scrapCount; j++) {
-						removeDetachedView(scrap.remove(scrapCount - 1 - j),
-								false);
-					}
+				fraction = 1 - decay;
+			}
+			
+			boolean end = (Math.abs(offset) < SPRING_REST_DISTANCE 
+					&& Math.abs(mVelocity) < SPRING_REST_VELOCITY)
+					|| (mRemoveOnEnd && fraction > SPRING_DISCARD_FRACTION);
+			if (end) {
+				offset = 0;
+				fraction = 1;
+			}
+			apply(mToY + offset, fraction);
+			return end;
+		}
+		
+		private void apply(float translationY, float fraction) {
+			float alpha = mFromAlpha + (mToAlpha - mFromAlpha) * fraction;
+			float scale = mFromScale + (mToScale - mFromScale) * fraction;
+			if (mSnapshot != null) {
+				mSnapshot.translationY = translationY;
+				mSnapshot.alpha = alpha;
+				mSnapshot.scale = scale;
+				invalidate();
+			} else {
+				if (mFromY != mToY) {
+					// don't fight a drag, if the translation isn't animated.
+					mView.setTranslationY(translationY);
 				}
+				mView.setAlpha(alpha);
+				mView.setScaleX(scale);
+				mView.setScaleY(scale);
 			}
-			requestLayout();
 		}
 
 		/**
-		 * @return A view from the ScrapViews collection. These are unordered.
+		 * Called after the last step, when the animation was already 
+		 * removed from the running animations.
 		 */
-		public View getScrapView(int position) {
-			ArrayList<View> scrapViews;
-			if (mViewTypeCount == 1) {
-				scrapViews = mCurrentScrap;
-				int size = scrapViews.size();
-				if (size > 0) {
-					return scrapViews.remove(size - 1);
+		public void finish() {
+			mRunning = false;
+			if (mSnapshot != null) {
+				if (mRemoveOnEnd) {
+					mRemoveOnEnd = false;
+					releaseSnapshot(mSnapshot);
+				}
+				return;
+			}
+			
+			if (mView != mSelectedView || mScrollState != SCROLL_STATE_DRAGGING) {
+				demoteLayer(mView);
+			}
+			if (mRemoveOnEnd) {
+				mRemoveOnEnd = false;
+				
+				// remove view from screen
+				detachViewFromParent(mView);
+				recycleDetachedView(mView);
+			}
+		}
+	}
+	
+	/**
+	 * A cached drawing of an outgoing card and its animated state.
+	 */
+	private class Snapshot {
+		final CardAnimation animation = new CardAnimation(this);
+		Bitmap bitmap;
+		int left;
+		int top;
+		float translationY;
+		float alpha;
+		float scale;
+	}
+	
+	private void startFrameLoop() {
+		if (mFrameAnimator == null) {
+			mFrameAnimator = ValueAnimator.ofFloat(0, 1);
+			mFrameAnimator.setRepeatCount(ValueAnimator.INFINITE);
+			mFrameAnimator.addUpdateListener(mFrameCallback);
+		}
+		if (!mFrameAnimator.isStarted()) {
+			mFrameAnimator.start();
+		}
+	}
+	
+	/**
+	 * Steps all running card animations in one pass. The frame loop stops, 
+	 * as soon as no card moves anymore.
+	 */
+	private void stepAnimations() {
+		if (mDragPending) {
+			applyDrag();
+		}
+		
+		long now = AnimationUtils.currentAnimationTimeMillis();
+		for (int i = mRunningAnimations.size() - 1; i >= 0; i--) {
+			if (i >= mRunningAnimations.size()) {
+				// a finished animation removed others.
+				continue;
+			}
+			CardAnimation animation = mRunningAnimations.get(i);
+			if (animation.step(now)) {
+				mRunningAnimations.remove(i);
+				animation.finish();
+			}
+		}
+		
+		if (mRunningAnimations.isEmpty() && mScrollState != SCROLL_STATE_DRAGGING) {
+			mFrameAnimator.cancel();
+			// the prepared cards are warmed up, as soon as nothing moves.
+			scheduleWarmUp();
+		}
+		
+		// the frame is done, so deferred callbacks can run now.
+		if (!mPendingEvents.isEmpty() && !mCallbacksScheduled) {
+			mCallbacksScheduled = true;
+			post(mDispatchEvents);
+		}
+	}
+	
+	@Override
+	protected void fireOnSelected() {
+		if (mDeferCallbacks) {
+			queueEvent(EVENT_SELECTED, mSelectedView, mSelectedPosition, mSelectedRowId);
+		} else {
+			super.fireOnSelected();
+		}
+	}
+	
+	private CallbackEvent queueEvent(int type, View view, int position, long id) {
+		if (type == EVENT_SELECTED) {
+			// only the latest selection is of interest.
+			for (int i = mPendingEvents.size() - 1; i >= 0; i--) {
+				if (mPendingEvents.get(i).type == EVENT_SELECTED) {
+					releaseEvent(mPendingEvents.remove(i));
+				}
+			}
+		}
+		
+		CallbackEvent event = mFreeEvents.isEmpty() ? 
+				new CallbackEvent() : mFreeEvents.remove(mFreeEvents.size() - 1);
+		event.type = type;
+		event.view = view;
+		event.position = position;
+		event.id = id;
+		mPendingEvents.add(event);
+		
+		// without a running animation, there is no frame to wait for.
+		if (mRunningAnimations.isEmpty() && !mCallbacksScheduled) {
+			mCallbacksScheduled = true;
+			post(mDispatchEvents);
+		}
+		return event;
+	}
+	
+	private void releaseEvent(CallbackEvent event) {
+		event.view = null;
+		event.positions = null;
+		event.ids = null;
+		mFreeEvents.add(event);
+	}
+	
+	/**
+	 * Delivers all queued callbacks. Events queued by the listeners are 
+	 * delivered with the next batch.
+	 */
+	private void dispatchEvents() {
+		removeCallbacks(mDispatchEvents);
+		mCallbacksScheduled = false;
+		
+		// events stay queued until they are delivered, so a listener
+		// changing the data moves the positions of the following ones.
+		for (int n = mPendingEvents.size(); n > 0 && !mPendingEvents.isEmpty(); n--) {
+			CallbackEvent event = mPendingEvents.remove(0);
+			switch (event.type) {
+			case EVENT_SELECTED:
+				// the queued position is stale, if the item was removed 
+				// meanwhile. The listener learns the current selection.
+				OnItemSelectedListener listener = getOnItemSelectedListener();
+				if (listener == null) {
+					break;
+				} else if (mSelectedPosition == INVALID_POSITION) {
+					listener.onNothingSelected(this);
 				} else {
-					return null;
+					listener.onItemSelected(this, mSelectedView, 
+							mSelectedPosition, mSelectedRowId);
 				}
-			} else {
-				int whichScrap = mAdapter.getItemViewType(position);
-				if (whichScrap >= 0 && whichScrap < mScrapViews.length) {
-					scrapViews = mScrapViews[whichScrap];
-					int size = scrapViews.size();
-					if (size > 0) {
-						return scrapViews.remove(size - 1);
-					}
+				break;
+			case EVENT_UP:
+				if (mSettleListener != null) {
+					mSettleListener.onItemUp(this, event.view, event.position, event.id);
+				}
+				break;
+			case EVENT_DOWN:
+				if (mSettleListener != null) {
+					mSettleListener.onItemDown(this, event.view, event.position, event.id);
+				}
+				break;
+			case EVENT_ITEMS_UP:
+				if (mItemsSettleListener != null) {
+					mItemsSettleListener.onItemsUp(this, event.positions, event.ids);
 				}
+				break;
+			case EVENT_ITEMS_DOWN:
+				if (mItemsSettleListener != null) {
+					mItemsSettleListener.onItemsDown(this, event.positions, event.ids);
+				}
+				break;
 			}
-			return null;
+			releaseEvent(event);
 		}
-
+	}
+	
+	/**
+	 * @return the position of the id, starting the search at the given 
+	 * position, or {@link AdapterView#INVALID_POSITION}.
+	 */
+	private int findPositionForId(int position, long id) {
+		if (mAdapter == null || id == INVALID_ROW_ID) {
+			return INVALID_POSITION;
+		}
+		if (position >= 0 && position < mItemCount && mAdapter.getItemId(position) == id) {
+			return position;
+		}
+		if (mAdapter instanceof IdLookup && mAdapter.hasStableIds()) {
+			int found = ((IdLookup) mAdapter).getPositionForId(id);
+			return found >= 0 && found < mItemCount ? found : INVALID_POSITION;
+		}
+		return INVALID_POSITION;
+	}
+	
+	/**
+	 * Jumps all running animations to their end.
+	 */
+	private void finishAnimations() {
+		while (!mRunningAnimations.isEmpty()) {
+			CardAnimation animation = mRunningAnimations.remove(0);
+			animation.step(Long.MAX_VALUE);
+			animation.finish();
+		}
+		if (mFrameAnimator != null) {
+			mFrameAnimator.cancel();
+		}
+	}
+	
+	/**
+	 * Finishes the oldest discarding cards, until a further one is allowed.
+	 */
+	private void limitDiscardingCards() {
+		int discarding = 0;
+		for (int i = mRunningAnimations.size() - 1; i >= 0; i--) {
+			CardAnimation animation = mRunningAnimations.get(i);
+			if (animation.isRemoving() && ++discarding >= mMaxDiscardingCards) {
+				mRunningAnimations.remove(i);
+				animation.step(Long.MAX_VALUE);
+				animation.finish();
+			}
+		}
+	}
+	
+	/**
+	 * View type key of an adapter without {@link RecyclePool.StableViewTypes}.
+	 * It is only equal for the same adapter instance.
+	 */
+	private static class AdapterViewType {
+		private final Adapter mAdapter;
+		private final int mViewType;
+		
+		AdapterViewType(Adapter adapter, int viewType) {
+			mAdapter = adapter;
+			mViewType = viewType;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof AdapterViewType)) {
+				return false;
+			}
+			AdapterViewType other = (AdapterViewType) o;
+			return mAdapter == other.mAdapter && mViewType == other.mViewType;
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(mAdapter) * 31 + mViewType;
+		}
+	}
+	
+	/**
+	 * Estimates the velocity of a pointer from its recent samples, including 
+	 * the historical ones batched into each MotionEvent. The velocity is the 
+	 * slope of a least squares line through the samples of the last 
+	 * {@link #HORIZON} milliseconds.
+	 */
+	private static class VelocityEstimator {
+		private static final int SAMPLES = 20;
+		private static final long HORIZON = 100; // ms
+		
+		private final long[] mTimes = new long[SAMPLES];
+		private final float[] mPositions = new float[SAMPLES];
+		private int mIndex;
+		private int mCount;
+		
+		void clear() {
+			mIndex = 0;
+			mCount = 0;
+		}
+		
+		void addMovement(MotionEvent event) {
+			int history = event.getHistorySize();
+			for (int i = 0; i < history; i++) {
+				add(event.getHistoricalEventTime(i), event.getHistoricalY(i));
+			}
+			add(event.getEventTime(), event.getY());
+		}
+		
+		private void add(long time, float position) {
+			mIndex = (mIndex + 1) % SAMPLES;
+			mTimes[mIndex] = time;
+			mPositions[mIndex] = position;
+			if (mCount < SAMPLES) {
+				mCount++;
+			}
+		}
+		
 		/**
-		 * Put a view into the ScapViews list. These views are unordered.
-		 * 
-		 * @param scrap The view to add
-		 * @return true, if view was added, else the recycle bin is full.
+		 * @return the velocity in pixels per second.
 		 */
-		public boolean addScrapView(View scrap) {
-			CardView.LayoutParams lp = (CardView.LayoutParams) scrap.getLayoutParams();
-			if (lp == null) {
-				return false;
+		float getVelocity() {
+			if (mCount < 2) {
+				return 0;
 			}
 			
-			if (mViewTypeCount == 1) {
-				if (mCurrentScrap.size() < RECYCLE_BIN_SIZE) {
-					mCurrentScrap.add(scrap);
-					
-					if (DEBUG) Log.v(TAG, "recycle view. Recylce bin size: "+
-							mCurrentScrap.size());
-					
-					return true;
-				} 
-			} else {
-				if (mScrapViews[lp.viewType].size() < RECYCLE_BIN_SIZE) {
-					mScrapViews[lp.viewType].add(scrap);
-					
-					if (DEBUG) Log.v(TAG, "recycle view. Recylce bin size: "+
-							mScrapViews[lp.viewType].size());
-					
-					return true;
+			// times are relative to the newest sample to keep precision.
+			long newest = mTimes[mIndex];
+			float sumT = 0, sumP = 0, sumTT = 0, sumTP = 0;
+			int n = 0;
+			for (int i = 0; i < mCount; i++) {
+				int index = (mIndex - i + SAMPLES) % SAMPLES;
+				float t = mTimes[index] - newest;
+				if (-t > HORIZON) {
+					break;
 				}
-				
+				float p = mPositions[index];
+				sumT += t;
+				sumP += p;
+				sumTT += t * t;
+				sumTP += t * p;
+				n++;
 			}
 			
-			if (DEBUG) Log.v(TAG, "recycle bin is full. Maybe the adapter " +
-					"does not recycle its views");
-			
-			return false;
+			float denominator = n * sumTT - sumT * sumT;
+			if (n < 2 || denominator == 0) {
+				return 0;
+			}
+			return (n * sumTP - sumT * sumP) / denominator * 1000;
 		}
 	}
 	
+	/**
+	 * A queued selection or settle callback.
+	 */
+	private static class CallbackEvent {
+		int type;
+		View view;
+		int position;
+		long id;
+		int[] positions;
+		long[] ids;
+	}
 	
+	/**
+	 * Inflates a view on the worker thread and delivers it on the UI thread.
+	 */
+	private class InflateTask implements Runnable {
+		final Adapter adapter;
+		final int viewType;
+		View view;
+		private boolean inflated;
+
+		public InflateTask(Adapter adapter, int viewType) {
+			this.adapter = adapter;
+			this.viewType = viewType;
+		}
+
+		@Override
+		public void run() {
+			if (inflated) {
+				onInflationFinished(this);
+				return;
+			}
+			
+			try {
+				view = ((ViewInflater) adapter).inflateView(viewType, CardView.this);
+			} catch (RuntimeException e) {
+				Log.e(TAG, "inflation of view type "+ viewType +" failed", e);
+			}
+			inflated = true;
+			mHandler.post(this);
+		}
+	}
+
 	/**
      *CardView extends LayoutParams to provide a place to hold the view type.
      */
@@ -651,6 +3288,49 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
          * {@link android.widget.Adapter#getItemViewType(int) }
          */
         int viewType;
+        
+        /**
+         * Key of the view type in the {@link RecyclePool}.
+         */
+        Object viewTypeKey;
+        
+        /**
+         * Position and row id this view was bound to in the lookahead.
+         */
+        int position = INVALID_POSITION;
+        long itemId = INVALID_ROW_ID;
+        
+        /**
+         * True, if this view only stands in for a view, which is still 
+         * inflated in the background.
+         */
+        boolean placeholder;
+        
+        /**
+         * Reusable animation of this view.
+         */
+        CardAnimation animation;
+        
+        /**
+         * True, while the view is drawn from a hardware layer, which was set
+         * by the render optimization.
+         */
+        boolean layerPromoted;
+        
+        /**
+         * Data generation of the CardView, when this view was bound.
+         */
+        int dataGeneration;
+        
+        /**
+         * True, if this view was drawn ahead of time since it was bound.
+         */
+        boolean warmedUp;
+        
+        /**
+         * True, until the selected view is drawn for the first time.
+         */
+        boolean firstDraw;
 
         public LayoutParams(Context c, AttributeSet attrs) {
             super(c, attrs);
@@ -679,9 +3359,58 @@ public class CardView extends AbsStack implements OnGestureListener, OnKeyListen
 				+ "}";
 	}
 
+	/**
+	 * Moves the selection by the given amount of cards. Only the card of the
+	 * final position is bound and the listeners receive a single selection
+	 * event. The stack wraps around like a settle does.
+	 * 
+	 * @param count of cards to skip. Negative values move backwards.
+	 */
+	public void fastForward(int count) {
+		fastForward(count, 1);
+	}
+	
+	private void fastForward(int count, float durationScale) {
+		resolveDataChange();
+		if (mAdapter == null || mItemCount == 0 || mSelectedPosition == INVALID_POSITION
+				|| mScrollState == SCROLL_STATE_DRAGGING) {
+			return;
+		}
+		
+		int position = (mSelectedPosition + count % mItemCount + mItemCount) % mItemCount;
+		if (DEBUG) Log.v(TAG, "fast forward "+ count +" cards to position "+ position);
+		
+		mNextSelectedPosition = position;
+		mNextSelectedRowId = mAdapter.getItemId(position);
+		
+		mSelectionDurationScale = durationScale;
+		checkSelectionChanged();
+		mSelectionDurationScale = 1;
+	}
+
 	@Override
-	public boolean onKey(View arg0, int arg1, KeyEvent arg2) {
-		Log.d("p1", "onKey: "+ arg1);
+	public boolean onKey(View view, int keyCode, KeyEvent event) {
+		// only the swipe axis moves the stack. Left and right are left 
+		// to the focus navigation.
+		int direction;
+		switch (keyCode) {
+		case KeyEvent.KEYCODE_DPAD_DOWN:
+			direction = 1;
+			break;
+		case KeyEvent.KEYCODE_DPAD_UP:
+			direction = -1;
+			break;
+		default:
+			return false;
+		}
+		
+		if (event.getAction() == KeyEvent.ACTION_DOWN) {
+			// a held key skips more cards with every repeat and 
+			// shortens the animations.
+			int repeat = event.getRepeatCount();
+			int step = Math.min(1 + repeat / KEY_REPEAT_ACCELERATION, MAX_KEY_STEP);
+			fastForward(direction * step, repeat > 0 ? KEY_REPEAT_DURATION_SCALE : 1);
+		}
 		return true;
 	}
 }
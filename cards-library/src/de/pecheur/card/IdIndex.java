@@ -0,0 +1,168 @@
+package de.pecheur.card;
+
+import java.util.Arrays;
+
+import android.widget.AdapterView;
+
+/**
+ * IdIndex maps row ids to adapter positions in constant time. It is an
+ * open addressing hash table of primitive longs and ints, so lookups neither
+ * box nor allocate. Adapters with stable ids keep an index up to date with
+ * their data and expose it through {@link AbsStack.IdLookup}.
+ * <p>
+ * Removing or inserting items shifts the positions behind them. Use
+ * {@link #offsetPositions(int, int)} for this, which is a single pass over
+ * the table without calling the adapter.
+ */
+public class IdIndex {
+	/**
+	 * Position value of an empty slot.
+	 */
+	private static final int FREE = AdapterView.INVALID_POSITION;
+
+	private long[] mIds;
+	private int[] mPositions;
+	private int mMask;
+	private int mSize;
+
+
+	public IdIndex() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity expected amount of ids.
+	 */
+	public IdIndex(int capacity) {
+		int size = 4;
+		while (size < capacity * 2) {
+			size <<= 1;
+		}
+		allocate(size);
+	}
+
+	private void allocate(int size) {
+		mIds = new long[size];
+		mPositions = new int[size];
+		Arrays.fill(mPositions, FREE);
+		mMask = size - 1;
+		mSize = 0;
+	}
+
+	private int slot(long id) {
+		long hash = id * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mMask;
+	}
+
+	/**
+	 * @return the position of the id, or {@link AdapterView#INVALID_POSITION}
+	 * if the id is unknown.
+	 */
+	public int get(long id) {
+		int i = slot(id);
+		while (mPositions[i] != FREE) {
+			if (mIds[i] == id) {
+				return mPositions[i];
+			}
+			i = (i + 1) & mMask;
+		}
+		return AdapterView.INVALID_POSITION;
+	}
+
+	/**
+	 * Maps the id to the position. An existing mapping is replaced.
+	 */
+	public void put(long id, int position) {
+		if (position < 0) {
+			throw new IllegalArgumentException("Can't index a position < 0");
+		}
+		if ((mSize + 1) * 2 > mPositions.length) {
+			grow();
+		}
+
+		int i = slot(id);
+		while (mPositions[i] != FREE) {
+			if (mIds[i] == id) {
+				mPositions[i] = position;
+				return;
+			}
+			i = (i + 1) & mMask;
+		}
+		mIds[i] = id;
+		mPositions[i] = position;
+		mSize++;
+	}
+
+	/**
+	 * Removes the mapping of the id. Positions of other ids are not changed.
+	 */
+	public void remove(long id) {
+		int i = slot(id);
+		while (mPositions[i] != FREE) {
+			if (mIds[i] == id) {
+				break;
+			}
+			i = (i + 1) & mMask;
+		}
+		if (mPositions[i] == FREE) {
+			return;
+		}
+
+		mPositions[i] = FREE;
+		mSize--;
+
+		// shift following entries back, so lookups don't stop
+		// at the freed slot.
+		int j = i;
+		while (true) {
+			j = (j + 1) & mMask;
+			if (mPositions[j] == FREE) {
+				return;
+			}
+			int k = slot(mIds[j]);
+			boolean between = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+			if (!between) {
+				mIds[i] = mIds[j];
+				mPositions[i] = mPositions[j];
+				mPositions[j] = FREE;
+				i = j;
+			}
+		}
+	}
+
+	/**
+	 * Adds delta to all positions greater or equal to start. Call it after
+	 * removing (negative delta) or before inserting (positive delta) items.
+	 */
+	public void offsetPositions(int start, int delta) {
+		final int[] positions = mPositions;
+		for (int i = 0; i < positions.length; i++) {
+			if (positions[i] >= start) {
+				positions[i] += delta;
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(mPositions, FREE);
+		mSize = 0;
+	}
+
+	/**
+	 * @return the amount of indexed ids.
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	private void grow() {
+		long[] ids = mIds;
+		int[] positions = mPositions;
+		allocate(positions.length * 2);
+		for (int i = 0; i < positions.length; i++) {
+			if (positions[i] != FREE) {
+				put(ids[i], positions[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,348 @@
+package de.pecheur.card;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.util.SparseIntArray;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+
+/**
+ * PagedCardAdapter is a {@link CardAdapter} for decks, which are too large to
+ * be held in memory. Only the count of the deck is known upfront. Items and
+ * their row ids are loaded in pages on a background thread, when a position
+ * of a page is requested for the first time. A page cache keeps a bounded
+ * amount of recently used pages and drops the least recently used ones.
+ * <p>
+ * Positions of pages, which are not resident yet, have no item and no row
+ * id. Their cards are bound in a pending state, see
+ * {@link #getView(int, Object, View, ViewGroup)}. As soon as the page
+ * arrives, the adapter notifies the changed item range, so the
+ * {@link CardView} rebinds only the selected card if necessary.
+ * <p>
+ * Row ids have to be stable. The positions of resident ids are indexed, so
+ * a {@link CardView} synchronizes its selection without scanning the deck.
+ * <p>
+ * All methods but {@link #loadPage(int, int, List, long[])} have to be
+ * called on the UI thread.
+ *
+ * @param <T> type of the items.
+ */
+public abstract class PagedCardAdapter<T> extends CardAdapter implements AbsStack.IdLookup {
+	private static final String TAG = "PagedCardAdapter";
+	private static final boolean DEBUG = false;
+
+	private static ExecutorService sLoadExecutor;
+
+	private final int mPageSize;
+	private final LruCache<Integer, Page<T>> mPages;
+	private final IdIndex mIndex;
+
+	/**
+	 * Pages, which are being loaded, mapped to the generation they were
+	 * requested in.
+	 */
+	private final SparseIntArray mPendingPages = new SparseIntArray();
+	private int mGeneration;
+
+	/**
+	 * The most recently used page, so consecutive calls for the same page
+	 * don't box its index for the page cache.
+	 */
+	private Page<T> mLastPage;
+	private int mLastPageIndex = -1;
+	private boolean mLastPageNextChecked;
+
+	private int mCount;
+	private Executor mExecutor;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+
+	/**
+	 * Items and row ids of a single page.
+	 */
+	private static class Page<T> {
+		final int offset;
+		final ArrayList<T> items;
+		final long[] ids;
+
+		Page(int offset, int count) {
+			this.offset = offset;
+			this.items = new ArrayList<T>(count);
+			this.ids = new long[count];
+		}
+	}
+
+
+	/**
+	 * @param pageSize
+	 *            amount of items loaded at once.
+	 * @param maxPages
+	 *            amount of pages kept in memory.
+	 */
+	public PagedCardAdapter(int pageSize, int maxPages) {
+		if (pageSize < 1 || maxPages < 1) {
+			throw new IllegalArgumentException(
+					"Can't have a page size or page cache < 1");
+		}
+		mPageSize = pageSize;
+		mIndex = new IdIndex(pageSize * maxPages);
+		mPages = new LruCache<Integer, Page<T>>(maxPages) {
+			@Override
+			protected void entryRemoved(boolean evicted, Integer key,
+					Page<T> oldValue, Page<T> newValue) {
+				// evicted ids have no position anymore.
+				for (long id : oldValue.ids) {
+					mIndex.remove(id);
+				}
+				if (oldValue == mLastPage) {
+					clearLastPage();
+				}
+				if (DEBUG) Log.v(TAG, "removed page " + key);
+			}
+		};
+	}
+
+	/**
+	 * Loads a page of items. Called on a background thread.
+	 *
+	 * @param offset
+	 *            position of the first item.
+	 * @param count
+	 *            amount of items to load.
+	 * @param items
+	 *            list to add the count items to.
+	 * @param ids
+	 *            array of count elements to store the stable row ids in.
+	 */
+	protected abstract void loadPage(int offset, int count, List<T> items, long[] ids);
+
+	/**
+	 * Binds a card like {@link #getView(int, View, ViewGroup)}.
+	 *
+	 * @param item
+	 *            The item at the position, or null if its page is still
+	 *            loading. In this case the card should show a pending state.
+	 */
+	public abstract View getView(int position, T item, View convertView, ViewGroup parent);
+
+	/**
+	 * Sets the executor, which loads the pages. By default, pages are loaded
+	 * one after another on a shared background thread.
+	 */
+	public void setLoadExecutor(Executor executor) {
+		mExecutor = executor;
+	}
+
+	/**
+	 * Sets the amount of items in the deck. All pages are dropped and loaded
+	 * again on demand.
+	 */
+	public void setCount(int count) {
+		mCount = count;
+		mGeneration++;
+		mPendingPages.clear();
+		mPages.evictAll();
+		mIndex.clear();
+		clearLastPage();
+		notifyDataSetChanged();
+	}
+
+	@Override
+	public int getCount() {
+		return mCount;
+	}
+
+	public int getPageSize() {
+		return mPageSize;
+	}
+
+	/**
+	 * @return true, if the item at the position is loaded.
+	 */
+	public boolean isResident(int position) {
+		return getPage(position / mPageSize) != null;
+	}
+
+	/**
+	 * @return the item at the position, or null if its page is still
+	 * loading.
+	 */
+	@Override
+	public T getItem(int position) {
+		Page<T> page = obtainPage(position);
+		return page == null ? null : page.items.get(position - page.offset);
+	}
+
+	/**
+	 * @return the row id of the item at the position, or
+	 * {@link AdapterView#INVALID_ROW_ID} if its page is still loading.
+	 */
+	@Override
+	public long getItemId(int position) {
+		Page<T> page = obtainPage(position);
+		return page == null ? AdapterView.INVALID_ROW_ID : page.ids[position - page.offset];
+	}
+
+	@Override
+	public boolean hasStableIds() {
+		return true;
+	}
+
+	/**
+	 * @return the position of the id, if its page is resident.
+	 */
+	@Override
+	public int getPositionForId(long id) {
+		return mIndex.get(id);
+	}
+
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent) {
+		return getView(position, getItem(position), convertView, parent);
+	}
+
+	/**
+	 * Returns the resident page of the position. Missing pages are requested.
+	 * Positions in the second half of a page request the following page too,
+	 * because cards are usually visited in ascending order.
+	 */
+	private Page<T> obtainPage(int position) {
+		int index = position / mPageSize;
+		Page<T> page = getPage(index);
+		if (page == null) {
+			requestPage(index);
+			return null;
+		}
+
+		if (!mLastPageNextChecked && position - index * mPageSize >= mPageSize / 2) {
+			// the stack wraps around at the end of the deck.
+			mLastPageNextChecked = true;
+			int next = (index + 1) * mPageSize < mCount ? index + 1 : 0;
+			if (next != index && mPages.get(next) == null) {
+				requestPage(next);
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * @return the resident page of the index, or null.
+	 */
+	private Page<T> getPage(int index) {
+		if (index == mLastPageIndex) {
+			return mLastPage;
+		}
+		Page<T> page = mPages.get(index);
+		if (page != null) {
+			mLastPage = page;
+			mLastPageIndex = index;
+			mLastPageNextChecked = false;
+		}
+		return page;
+	}
+
+	private void clearLastPage() {
+		mLastPage = null;
+		mLastPageIndex = -1;
+	}
+
+	private void requestPage(final int index) {
+		if (mPendingPages.get(index, -1) == mGeneration) {
+			return;
+		}
+		mPendingPages.put(index, mGeneration);
+
+		final int generation = mGeneration;
+		final int offset = index * mPageSize;
+		final int count = Math.min(mPageSize, mCount - offset);
+		if (DEBUG) Log.v(TAG, "request page " + index);
+
+		getLoadExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				final Page<T> page = new Page<T>(offset, count);
+				try {
+					loadPage(offset, count, page.items, page.ids);
+				} catch (RuntimeException e) {
+					Log.w(TAG, "failed to load page " + index, e);
+					mHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							onPageFailed(index, generation);
+						}
+					});
+					return;
+				}
+				mHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						onPageLoaded(index, generation, page);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Called on the UI thread with a page loaded in the background.
+	 */
+	private void onPageLoaded(int index, int generation, Page<T> page) {
+		if (generation != mGeneration) {
+			// the deck changed meanwhile.
+			return;
+		}
+		mPendingPages.delete(index);
+
+		mPages.put(index, page);
+		for (int i = 0; i < page.ids.length; i++) {
+			mIndex.put(page.ids[i], page.offset + i);
+		}
+
+		// pending cards of this page show their items now.
+		notifyItemRangeChanged(page.offset, page.ids.length);
+	}
+
+	/**
+	 * Called on the UI thread, if a page couldn't be loaded. The page is
+	 * requested again, when one of its positions is used next time.
+	 */
+	private void onPageFailed(int index, int generation) {
+		if (mPendingPages.get(index, -1) == generation) {
+			mPendingPages.delete(index);
+		}
+	}
+
+	private Executor getLoadExecutor() {
+		if (mExecutor != null) {
+			return mExecutor;
+		}
+		if (sLoadExecutor == null) {
+			sLoadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, "PagedCardAdapter loader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sLoadExecutor;
+	}
+}
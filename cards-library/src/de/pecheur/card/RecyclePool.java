@@ -0,0 +1,374 @@
+package de.pecheur.card;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.util.Log;
+import android.view.View;
+
+/**
+ * RecyclePool keeps unused views for later reuse. A pool can be shared
+ * between several {@link CardView}s. Views of adapters implementing
+ * {@link StableViewTypes} outlive adapter changes, because they are not
+ * keyed by the adapter's view type index, but by a stable view type key.
+ * Views of other adapters are only reused by the same adapter instance.
+ * Pooled views have no parent.
+ * <p>
+ * Each view type has an own capacity, which grows with every miss and
+ * shrinks if the type keeps unused views for a while. All types share the
+ * size of the pool. If it is exceeded, the least recently pooled view is
+ * evicted.
+ * <p>
+ * Optionally, the pool keeps a few views, which are still bound to an item
+ * with a stable row id, apart from the other views. They are handed out
+ * again for the same item of the same owner, usually the adapter, so the
+ * item does not need to be bound again. If the bound views exceed their
+ * cache size, the oldest one joins the unbound views of its type.
+ * <p>
+ * The pool is not thread-safe and has to be used on the UI thread.
+ */
+public class RecyclePool {
+	private static final String TAG = "RecyclePool";
+	private static final boolean DEBUG = false;
+
+	/**
+	 * Number of reuses in a row, which left unused views of the same type in
+	 * the pool, before the capacity of this type is shrunk by one.
+	 */
+	private static final int SHRINK_THRESHOLD = 8;
+
+	/**
+	 * Interface definition for adapters, whose view types have an identity
+	 * beyond a single adapter instance. Two adapters returning equal keys
+	 * for a view type can reuse each others views.
+	 */
+	public interface StableViewTypes {
+		/**
+		 * @param viewType
+		 *            The view type as returned by
+		 *            {@link android.widget.Adapter#getItemViewType(int)}.
+		 * @return a key with a meaningful equals and hashCode implementation.
+		 */
+		public Object getViewTypeKey(int viewType);
+	}
+
+	private final HashMap<Object, Scrap> mScraps = new HashMap<Object, Scrap>();
+
+	/**
+	 * All pooled views with their scrap, ordered from least to most
+	 * recently pooled.
+	 */
+	private final ArrayList<View> mLru = new ArrayList<View>();
+	private final ArrayList<Scrap> mLruScraps = new ArrayList<Scrap>();
+
+	private int mMaxScrap;
+
+	/**
+	 * Views bound to an item with their view type key, owner and row id,
+	 * ordered from least to most recently pooled.
+	 */
+	private final ArrayList<View> mBound = new ArrayList<View>();
+	private final ArrayList<Object> mBoundKeys = new ArrayList<Object>();
+	private final ArrayList<Object> mBoundOwners = new ArrayList<Object>();
+	private long[] mBoundIds = new long[0];
+	private int mMaxBound;
+	private int mBoundHits;
+
+
+	/**
+	 * Views and statistics of a single view type.
+	 */
+	private static class Scrap {
+		final ArrayList<View> views = new ArrayList<View>();
+		int capacity = 1;
+		int surplus;
+		int hits;
+		int misses;
+		int evictions;
+	}
+
+
+	/**
+	 * @param maxScrap amount of pooled views of all types together.
+	 */
+	public RecyclePool(int maxScrap) {
+		setMaxScrap(maxScrap);
+	}
+
+
+	public void setMaxScrap(int maxScrap) {
+		if (maxScrap < 1) {
+			throw new IllegalArgumentException(
+					"Can't have a pool size < 1");
+		}
+		mMaxScrap = maxScrap;
+		while (mLru.size() > mMaxScrap) {
+			evict(0);
+		}
+	}
+
+	public int getMaxScrap() {
+		return mMaxScrap;
+	}
+
+	/**
+	 * Sets the amount of views, which are kept bound to their items.
+	 *
+	 * @param maxBound size of the bound view cache. 0 disables it.
+	 */
+	public void setMaxBound(int maxBound) {
+		if (maxBound < 0) {
+			throw new IllegalArgumentException(
+					"Can't have a bound view cache < 0");
+		}
+		while (mBound.size() > maxBound) {
+			unbind(0);
+		}
+		long[] ids = new long[maxBound];
+		System.arraycopy(mBoundIds, 0, ids, 0, mBound.size());
+		mBoundIds = ids;
+		mMaxBound = maxBound;
+	}
+
+	public int getMaxBound() {
+		return mMaxBound;
+	}
+
+	/**
+	 * Removes all pooled views. The statistics are kept.
+	 */
+	public void clear() {
+		for (Scrap scrap : mScraps.values()) {
+			scrap.views.clear();
+		}
+		mLru.clear();
+		mLruScraps.clear();
+		mBound.clear();
+		mBoundKeys.clear();
+		mBoundOwners.clear();
+	}
+
+	/**
+	 * Releases pooled views, until at most size views are left. Bound views
+	 * are released first, then the least recently pooled ones.
+	 */
+	public void trimToSize(int size) {
+		while (!mBound.isEmpty() && mBound.size() + mLru.size() > size) {
+			removeBound(0);
+		}
+		while (mLru.size() > size) {
+			evict(0);
+		}
+	}
+
+	/**
+	 * @return the amount of pooled views, which are not bound.
+	 */
+	public int size() {
+		return mLru.size();
+	}
+
+	/**
+	 * @return the amount of pooled views, which are still bound to an item.
+	 */
+	public int getBoundCount() {
+		return mBound.size();
+	}
+
+	private Scrap getScrap(Object key) {
+		Scrap scrap = mScraps.get(key);
+		if (scrap == null) {
+			scrap = new Scrap();
+			mScraps.put(key, scrap);
+		}
+		return scrap;
+	}
+
+	/**
+	 * @return a pooled view of the given type, or null if there is none.
+	 */
+	public View get(Object key) {
+		Scrap scrap = getScrap(key);
+
+		int size = scrap.views.size();
+		if (size == 0) {
+			// a bound view is better than inflating a new one.
+			int bound = mBoundKeys.indexOf(key);
+			if (bound >= 0) {
+				scrap.hits++;
+				return removeBound(bound);
+			}
+			
+			// one more view of this type would have been reused.
+			scrap.misses++;
+			scrap.surplus = 0;
+			if (scrap.capacity < mMaxScrap) {
+				scrap.capacity++;
+			}
+			return null;
+		}
+
+		scrap.hits++;
+		View view = scrap.views.remove(size - 1);
+		int index = mLru.lastIndexOf(view);
+		mLru.remove(index);
+		mLruScraps.remove(index);
+
+		if (size > 1) {
+			// views stayed unused. If this happens repeatedly, the
+			// capacity is shrunk.
+			if (++scrap.surplus >= SHRINK_THRESHOLD && scrap.capacity > 1) {
+				scrap.capacity--;
+				scrap.surplus = 0;
+				if (scrap.views.size() > scrap.capacity) {
+					evict(mLru.indexOf(scrap.views.get(0)));
+				}
+			}
+		} else {
+			scrap.surplus = 0;
+		}
+		return view;
+	}
+
+	/**
+	 * @return true, if a view of the given type is available.
+	 */
+	public boolean has(Object key) {
+		Scrap scrap = mScraps.get(key);
+		return (scrap != null && !scrap.views.isEmpty()) || mBoundKeys.contains(key);
+	}
+
+	/**
+	 * @return the pooled view bound to the item, or null if there is none.
+	 */
+	public View getBound(Object key, Object owner, long id) {
+		int index = indexOfBound(owner, id);
+		if (index < 0 || !mBoundKeys.get(index).equals(key)) {
+			return null;
+		}
+		mBoundHits++;
+		return removeBound(index);
+	}
+
+	/**
+	 * Puts a view without parent into the pool, which is still bound to the
+	 * item of the owner with the given row id. Without a bound view cache,
+	 * the view is pooled like {@link #put(Object, View)}.
+	 */
+	public void putBound(Object key, View view, Object owner, long id) {
+		if (mMaxBound == 0) {
+			put(key, view);
+			return;
+		}
+
+		int index = indexOfBound(owner, id);
+		if (index >= 0) {
+			unbind(index);
+		}
+		if (mBound.size() == mMaxBound) {
+			unbind(0);
+		}
+
+		mBoundIds[mBound.size()] = id;
+		mBound.add(view);
+		mBoundKeys.add(key);
+		mBoundOwners.add(owner);
+
+		if (DEBUG) Log.v(TAG, "keep bound view of id " + id);
+	}
+
+	/**
+	 * Turns all views bound by the owner into unbound views, e.g. because the
+	 * data of the owner changed.
+	 */
+	public void unbindAll(Object owner) {
+		for (int i = mBound.size() - 1; i >= 0; i--) {
+			if (mBoundOwners.get(i) == owner) {
+				unbind(i);
+			}
+		}
+	}
+
+	private int indexOfBound(Object owner, long id) {
+		for (int i = mBound.size() - 1; i >= 0; i--) {
+			if (mBoundIds[i] == id && mBoundOwners.get(i) == owner) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void unbind(int index) {
+		Object key = mBoundKeys.get(index);
+		put(key, removeBound(index));
+	}
+
+	private View removeBound(int index) {
+		int size = mBound.size();
+		System.arraycopy(mBoundIds, index + 1, mBoundIds, index, size - index - 1);
+		mBoundKeys.remove(index);
+		mBoundOwners.remove(index);
+		return mBound.remove(index);
+	}
+
+	/**
+	 * Puts a view without parent into the pool. If the capacity of its type
+	 * or the size of the pool is exceeded, the least recently pooled view
+	 * is evicted.
+	 */
+	public void put(Object key, View view) {
+		Scrap scrap = getScrap(key);
+		scrap.views.add(view);
+		mLru.add(view);
+		mLruScraps.add(scrap);
+
+		if (scrap.views.size() > scrap.capacity) {
+			evict(mLru.indexOf(scrap.views.get(0)));
+		}
+		if (mLru.size() > mMaxScrap) {
+			evict(0);
+		}
+
+		if (DEBUG) Log.v(TAG, "recycle view. Pool size: "+ mLru.size());
+	}
+
+	private void evict(int index) {
+		View view = mLru.remove(index);
+		Scrap scrap = mLruScraps.remove(index);
+		scrap.views.remove(view);
+		scrap.evictions++;
+
+		if (DEBUG) Log.v(TAG, "evicted view. Pool size: "+ mLru.size());
+	}
+
+	/**
+	 * @return how often a pooled view of the given type was reused.
+	 */
+	public int getHitCount(Object key) {
+		Scrap scrap = mScraps.get(key);
+		return scrap == null ? 0 : scrap.hits;
+	}
+
+	/**
+	 * @return how often no pooled view of the given type was available.
+	 */
+	public int getMissCount(Object key) {
+		Scrap scrap = mScraps.get(key);
+		return scrap == null ? 0 : scrap.misses;
+	}
+
+	/**
+	 * @return how often a bound view was reused for its item.
+	 */
+	public int getBoundHitCount() {
+		return mBoundHits;
+	}
+
+	/**
+	 * @return how many views of the given type were evicted.
+	 */
+	public int getEvictionCount(Object key) {
+		Scrap scrap = mScraps.get(key);
+		return scrap == null ? 0 : scrap.evictions;
+	}
+}
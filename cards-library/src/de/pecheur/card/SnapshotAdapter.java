@@ -0,0 +1,301 @@
+package de.pecheur.card;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.AdapterView;
+
+/**
+ * SnapshotAdapter is a {@link CardAdapter}, whose items may be edited from
+ * any thread. The UI thread only reads an immutable snapshot of the items.
+ * Writers collect their edits in an {@link Editor}. Committing it builds the
+ * next snapshot on the writing thread, so the UI thread never copies lists.
+ * <p>
+ * The UI thread swaps in the latest committed snapshot with its next
+ * message and notifies a single data change. Snapshots committed in
+ * between are skipped, so a burst of commits costs one resync of the
+ * {@link CardView}.
+ * <p>
+ * Items are identified by stable row ids. Each snapshot has an
+ * {@link IdIndex}, so the stack synchronizes its selection without
+ * scanning.
+ *
+ * @param <T> type of the items.
+ */
+public abstract class SnapshotAdapter<T> extends CardAdapter implements AbsStack.IdLookup {
+	private static final String TAG = "SnapshotAdapter";
+	private static final boolean DEBUG = false;
+
+	private static final int OP_ADD = 0;
+	private static final int OP_SET = 1;
+	private static final int OP_REMOVE = 2;
+	private static final int OP_CLEAR = 3;
+
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * The snapshot shown by the UI thread.
+	 */
+	private Snapshot<T> mSnapshot;
+
+	/**
+	 * The latest committed snapshot. Writers build the next snapshot 
+	 * without a lock and only replace it, if it didn't change meanwhile.
+	 */
+	private final AtomicReference<Snapshot<T>> mCommitted = new AtomicReference<Snapshot<T>>();
+
+	/**
+	 * True, while a swap is posted to the UI thread.
+	 */
+	private final AtomicBoolean mSwapScheduled = new AtomicBoolean();
+
+	private final AtomicInteger mCommitCount = new AtomicInteger();
+	private int mSwapCount;
+
+	private final Runnable mSwap = new Runnable() {
+		@Override
+		public void run() {
+			swapSnapshot();
+		}
+	};
+
+
+	/**
+	 * Immutable items and row ids.
+	 */
+	private static class Snapshot<T> {
+		final ArrayList<T> items;
+		final long[] ids;
+		final IdIndex index;
+
+		Snapshot(ArrayList<T> items, long[] ids) {
+			this.items = items;
+			this.ids = ids;
+			this.index = new IdIndex(ids.length);
+			for (int i = 0; i < ids.length; i++) {
+				index.put(ids[i], i);
+			}
+		}
+	}
+
+
+	public SnapshotAdapter() {
+		mSnapshot = new Snapshot<T>(new ArrayList<T>(0), new long[0]);
+		mCommitted.set(mSnapshot);
+	}
+
+	/**
+	 * @return a new editor. It can be used on any thread, but only by one
+	 * thread at a time.
+	 */
+	public Editor edit() {
+		return new Editor();
+	}
+
+	@Override
+	public int getCount() {
+		return mSnapshot.ids.length;
+	}
+
+	@Override
+	public T getItem(int position) {
+		return mSnapshot.items.get(position);
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return mSnapshot.ids[position];
+	}
+
+	@Override
+	public boolean hasStableIds() {
+		return true;
+	}
+
+	@Override
+	public int getPositionForId(long id) {
+		return mSnapshot.index.get(id);
+	}
+
+	/**
+	 * @return how many editors were committed.
+	 */
+	public int getCommitCount() {
+		return mCommitCount.get();
+	}
+
+	/**
+	 * @return how many snapshots the UI thread swapped in.
+	 */
+	public int getSwapCount() {
+		return mSwapCount;
+	}
+
+	/**
+	 * Called on the UI thread to show the latest committed snapshot.
+	 */
+	private void swapSnapshot() {
+		// commits from now on post another swap.
+		mSwapScheduled.set(false);
+		Snapshot<T> snapshot = mCommitted.get();
+		if (snapshot == mSnapshot) {
+			return;
+		}
+
+		if (DEBUG) Log.v(TAG, "swap snapshot: " + snapshot.ids.length + " items");
+		mSnapshot = snapshot;
+		mSwapCount++;
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * Builds the next snapshot from the committed one and the edits.
+	 * Called on the writing thread without a lock.
+	 */
+	private Snapshot<T> apply(Snapshot<T> base, ArrayList<Op<T>> ops) {
+		// replay the edits on maps, so the base is copied only once.
+		boolean cleared = false;
+		IdIndex removed = new IdIndex();
+		HashMap<Long, T> sets = new HashMap<Long, T>();
+		LinkedHashMap<Long, T> adds = new LinkedHashMap<Long, T>();
+
+		for (int i = 0; i < ops.size(); i++) {
+			Op<T> op = ops.get(i);
+			boolean inBase = !cleared && base.index.get(op.id) != AdapterView.INVALID_POSITION
+					&& removed.get(op.id) == AdapterView.INVALID_POSITION;
+
+			switch (op.type) {
+			case OP_ADD:
+			case OP_SET:
+				if (inBase) {
+					sets.put(op.id, op.item);
+				} else if (op.type == OP_ADD || adds.containsKey(op.id)) {
+					adds.put(op.id, op.item);
+				}
+				break;
+			case OP_REMOVE:
+				adds.remove(op.id);
+				sets.remove(op.id);
+				if (inBase) {
+					removed.put(op.id, 0);
+				}
+				break;
+			case OP_CLEAR:
+				cleared = true;
+				removed.clear();
+				sets.clear();
+				adds.clear();
+				break;
+			}
+		}
+
+		int baseCount = cleared ? 0 : base.ids.length;
+		int count = baseCount - removed.size() + adds.size();
+		ArrayList<T> items = new ArrayList<T>(count);
+		long[] ids = new long[count];
+
+		int n = 0;
+		for (int i = 0; i < baseCount; i++) {
+			long id = base.ids[i];
+			if (removed.get(id) != AdapterView.INVALID_POSITION) {
+				continue;
+			}
+			T item = sets.containsKey(id) ? sets.get(id) : base.items.get(i);
+			items.add(item);
+			ids[n++] = id;
+		}
+		for (Map.Entry<Long, T> entry : adds.entrySet()) {
+			items.add(entry.getValue());
+			ids[n++] = entry.getKey();
+		}
+		return new Snapshot<T>(items, ids);
+	}
+
+
+	private static class Op<T> {
+		final int type;
+		final long id;
+		final T item;
+
+		Op(int type, long id, T item) {
+			this.type = type;
+			this.id = id;
+			this.item = item;
+		}
+	}
+
+	/**
+	 * Editor collects edits and applies them all at once. Edits refer to
+	 * items by their row id, so they stay valid, while other editors commit
+	 * meanwhile.
+	 */
+	public class Editor {
+		private final ArrayList<Op<T>> mOps = new ArrayList<Op<T>>();
+
+		private Editor() {
+		}
+
+		/**
+		 * Appends an item. If the id exists already, its item is replaced.
+		 */
+		public Editor add(long id, T item) {
+			mOps.add(new Op<T>(OP_ADD, id, item));
+			return this;
+		}
+
+		/**
+		 * Replaces the item of an existing id. Unknown ids are ignored.
+		 */
+		public Editor set(long id, T item) {
+			mOps.add(new Op<T>(OP_SET, id, item));
+			return this;
+		}
+
+		public Editor remove(long id) {
+			mOps.add(new Op<T>(OP_REMOVE, id, null));
+			return this;
+		}
+
+		/**
+		 * Removes all items, including those added before by this editor.
+		 */
+		public Editor clear() {
+			mOps.add(new Op<T>(OP_CLEAR, 0, null));
+			return this;
+		}
+
+		/**
+		 * Builds the next snapshot on the calling thread and schedules it
+		 * for the UI thread. The editor is empty afterwards.
+		 */
+		public void commit() {
+			if (mOps.isEmpty()) {
+				return;
+			}
+
+			// the copy is built outside of any lock, so neither the UI 
+			// thread nor other writers wait for it. If another editor 
+			// committed meanwhile, the edits are applied to its snapshot.
+			Snapshot<T> base;
+			Snapshot<T> next;
+			do {
+				base = mCommitted.get();
+				next = apply(base, mOps);
+			} while (!mCommitted.compareAndSet(base, next));
+			
+			mCommitCount.incrementAndGet();
+			if (mSwapScheduled.compareAndSet(false, true)) {
+				mHandler.post(mSwap);
+			}
+			mOps.clear();
+		}
+	}
+}